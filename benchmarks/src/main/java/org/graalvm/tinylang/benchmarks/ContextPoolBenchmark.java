@@ -0,0 +1,84 @@
+package org.graalvm.tinylang.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.graalvm.tinylang.TinyContextPool;
+import org.graalvm.tinylang.TinyContextPool.PooledContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates a small script in a context borrowed from a
+ * {@link TinyContextPool}, compared to a new context on the same engine. With
+ * an <code>idleTimeout</code> of 0 every returned context has expired by the
+ * next borrow, and <code>poisoned</code> closes the context on return, so both
+ * create a context per operation like <code>fresh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContextPoolBenchmark {
+
+    @Param({ "60000", "0" })
+    public long idleTimeoutMillis;
+
+    private Engine engine;
+    private TinyContextPool pool;
+    private Source source;
+
+    @Setup
+    public void setup() {
+        engine = Engine.newBuilder("tiny").option("engine.WarnInterpreterOnly", "false").build();
+        pool = new TinyContextPool(engine, 4, Duration.ofMillis(idleTimeoutMillis), (b) -> {
+        });
+        pool.prewarm(4);
+        source = Source.newBuilder("tiny", "(block (set a 20) (set b 22) (add a b))", "script.tiny").buildLiteral();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+        engine.close();
+    }
+
+    @Benchmark
+    public String pooled() {
+        try (PooledContext pooled = pool.borrow()) {
+            return pooled.eval(source).toString();
+        }
+    }
+
+    @Benchmark
+    public String poisoned() {
+        try (PooledContext pooled = pool.borrow()) {
+            String result = pooled.eval(source).toString();
+            pooled.poison();
+            return result;
+        }
+    }
+
+    @Benchmark
+    public String fresh() {
+        try (Context context = Context.newBuilder("tiny").engine(engine).build()) {
+            return context.eval(source).toString();
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.graalvm.tinylang.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic tiny programs for parser and startup benchmarks. A program
+ * consists of <code>functions</code> defs with two arguments. Each def body has
+ * <code>statements</code> sets of add expressions nested <code>depth</code>
+ * deep. The leaves are arguments, earlier locals and literals. The literal
+ * weights select integers, doubles or strings, which are only stored and never
+ * added. The top level calls the first <code>calls</code> functions, so the
+ * program terminates quickly and only a part of it may run. Without calls the
+ * program evaluates to 0.
+ * <p>
+ * Also usable from the command line:
+ * <pre>
+ * java CorpusGenerator [--functions N] [--statements N] [--depth N] [--calls N]
+ *                      [--ints W] [--doubles W] [--strings W] [--seed N]
+ * </pre>
+ */
+public final class CorpusGenerator {
+
+    int functions = 1000;
+    int statements = 10;
+    int depth = 3;
+    int calls = Integer.MAX_VALUE;
+    int intWeight = 70;
+    int doubleWeight = 20;
+    int stringWeight = 10;
+    long seed = 42;
+
+    public CorpusGenerator functions(int count) {
+        this.functions = count;
+        return this;
+    }
+
+    public CorpusGenerator statements(int count) {
+        this.statements = count;
+        return this;
+    }
+
+    public CorpusGenerator depth(int levels) {
+        this.depth = levels;
+        return this;
+    }
+
+    public CorpusGenerator calls(int count) {
+        this.calls = count;
+        return this;
+    }
+
+    public CorpusGenerator literals(int ints, int doubles, int strings) {
+        this.intWeight = ints;
+        this.doubleWeight = doubles;
+        this.stringWeight = strings;
+        return this;
+    }
+
+    public CorpusGenerator seed(long value) {
+        this.seed = value;
+        return this;
+    }
+
+    public String generate() {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder();
+        // indices of the locals of the current def that hold numbers
+        int[] numericLocals = new int[statements];
+        out.append("; generated with seed ").append(seed).append('\n');
+        for (int f = 0; f < functions; f++) {
+            out.append("(def f").append(f).append(" a b\n  (block\n");
+            int numericCount = 0;
+            for (int s = 0; s < statements; s++) {
+                out.append("    (set x").append(s).append(' ');
+                int kind = random.nextInt(intWeight + doubleWeight + stringWeight);
+                if (kind >= intWeight + doubleWeight) {
+                    out.append("\"s").append(random.nextInt(1000)).append('"');
+                } else {
+                    expression(out, random, depth, numericLocals, numericCount);
+                    numericLocals[numericCount++] = s;
+                }
+                out.append(")\n");
+            }
+            out.append("    a))\n");
+        }
+        int called = Math.min(calls, functions);
+        for (int f = 0; f < called; f++) {
+            out.append("(call f").append(f).append(' ').append(f).append(" 1)\n");
+        }
+        if (called == 0) {
+            // the program needs a value
+            out.append("0\n");
+        }
+        return out.toString();
+    }
+
+    private void expression(StringBuilder out, Random random, int levels, int[] numericLocals, int numericCount) {
+        if (levels == 0) {
+            int leaf = random.nextInt(4);
+            if (leaf == 0) {
+                out.append(random.nextBoolean() ? 'a' : 'b');
+            } else if (leaf == 1 && numericCount > 0) {
+                out.append('x').append(numericLocals[random.nextInt(numericCount)]);
+            } else if (random.nextInt(intWeight + doubleWeight) < intWeight) {
+                out.append(random.nextInt(1000));
+            } else {
+                out.append(random.nextInt(1000)).append('.').append(random.nextInt(10));
+            }
+            return;
+        }
+        out.append("(add ");
+        expression(out, random, levels - 1, numericLocals, numericCount);
+        out.append(' ');
+        expression(out, random, levels - 1, numericLocals, numericCount);
+        out.append(')');
+    }
+
+    public static void main(String[] args) {
+        CorpusGenerator generator = new CorpusGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+            case "--functions":
+                generator.functions(value);
+                break;
+            case "--statements":
+                generator.statements(value);
+                break;
+            case "--depth":
+                generator.depth(value);
+                break;
+            case "--calls":
+                generator.calls(value);
+                break;
+            case "--ints":
+                generator.literals(value, generator.doubleWeight, generator.stringWeight);
+                break;
+            case "--doubles":
+                generator.literals(generator.intWeight, value, generator.stringWeight);
+                break;
+            case "--strings":
+                generator.literals(generator.intWeight, generator.doubleWeight, value);
+                break;
+            case "--seed":
+                generator.seed(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        System.out.print(generator.generate());
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.graalvm.tinylang.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to the first result of a generated corpus: creates a context, evaluates
+ * the source and closes the context. The first iteration of every fork runs on a
+ * cold JVM. The native launcher is measured with the startup script instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+@Warmup(iterations = 0)
+@Measurement(iterations = 10)
+public class EvalLatencyBenchmark {
+
+    @Param({ "100", "10000" })
+    public int functions;
+
+    /*
+     * Number of called functions.
+     */
+    @Param({ "10" })
+    public int calls;
+
+    @Param({ "false", "true" })
+    public boolean lazy;
+
+    private Source source;
+
+    @Setup
+    public void setup() {
+        String text = new CorpusGenerator().functions(functions).calls(calls).generate();
+        source = Source.newBuilder("tiny", text, "corpus.tiny").buildLiteral();
+    }
+
+    @Benchmark
+    public String eval() {
+        try (Context context = Context.newBuilder("tiny").allowExperimentalOptions(true).option("tiny.LazyParsing", String.valueOf(lazy)).build()) {
+            return context.eval(source).toString();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.graalvm.tinylang.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates one of the test programs in a context created per trial. The
+ * {@link #warmup()} iterations form the warmup curve of a fresh engine,
+ * {@link #peak()} measures the time per evaluation after warmup.
+ * <p>
+ * Subclasses select the program and the languages that support it. The language
+ * <code>tiny-tags</code> is tiny built with <code>--tiny.EagerTags</code>. The
+ * loop bound 10000 of the test programs is replaced with <code>size</code>.
+ */
+@State(Scope.Benchmark)
+@Fork(3)
+public abstract class ExecutionBenchmark {
+
+    static final Path PROGRAMS = Path.of(System.getProperty("tiny.programs", "../test"));
+
+    @Param({ "compiled", "interpreter" })
+    public String engine;
+
+    private Context context;
+    private Source source;
+
+    protected abstract String program();
+
+    protected abstract String languageId();
+
+    protected abstract int size();
+
+    @Setup
+    public void setup() throws IOException {
+        String text = Files.readString(PROGRAMS.resolve(program() + ".tiny")).replace("10000", String.valueOf(size()));
+        String language = languageId();
+        Context.Builder builder = Context.newBuilder().allowExperimentalOptions(true).option("engine.WarnInterpreterOnly", "false");
+        if (language.equals("tiny-tags")) {
+            language = "tiny";
+            builder.option("tiny.EagerTags", "true");
+        }
+        if (engine.equals("interpreter")) {
+            builder.option("engine.Compilation", "false");
+        }
+        context = builder.build();
+        source = Source.newBuilder(language, text, program() + ".tiny").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 10, time = 1)
+    @Measurement(iterations = 10, time = 1)
+    public Value peak() {
+        return context.eval(source);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 50)
+    public Value warmup() {
+        return context.eval(source);
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.graalvm.tinylang.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the bytecode of a generated corpus that only declares functions. The
+ * source is not cached, so every evaluation parses it again, and running the
+ * resulting program does no work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParseBenchmark {
+
+    @Param({ "100", "10000" })
+    public int functions;
+
+    @Param({ "false", "true" })
+    public boolean lazy;
+
+    private Context context;
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = new CorpusGenerator().functions(functions).calls(0).generate();
+        context = Context.newBuilder("tiny").allowExperimentalOptions(true).option("tiny.LazyParsing", String.valueOf(lazy)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Value parse() {
+        return context.eval(Source.newBuilder("tiny", text, "corpus.tiny").cached(false).buildLiteral());
+    }
+
+}
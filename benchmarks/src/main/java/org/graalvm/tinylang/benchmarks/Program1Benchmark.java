@@ -0,0 +1,29 @@
+package org.graalvm.tinylang.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * test/program1.tiny. Constant arithmetic, supported by all variants.
+ */
+public class Program1Benchmark extends ExecutionBenchmark {
+
+    @Param({ "tiny", "tiny-tags", "tiny1", "tiny2", "tiny3" })
+    public String language;
+
+    @Override
+    protected String program() {
+        return "program1";
+    }
+
+    @Override
+    protected String languageId() {
+        return language;
+    }
+
+    @Override
+    protected int size() {
+        // no loop to scale
+        return 10000;
+    }
+
+}
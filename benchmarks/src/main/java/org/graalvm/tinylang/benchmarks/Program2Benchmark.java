@@ -0,0 +1,31 @@
+package org.graalvm.tinylang.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * test/program2.tiny. A top-level loop, supported from <code>TinyLanguage2</code> on.
+ */
+public class Program2Benchmark extends ExecutionBenchmark {
+
+    @Param({ "tiny", "tiny-tags", "tiny2", "tiny3" })
+    public String language;
+
+    @Param({ "10000", "1000000" })
+    public int size;
+
+    @Override
+    protected String program() {
+        return "program2";
+    }
+
+    @Override
+    protected String languageId() {
+        return language;
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.graalvm.tinylang.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * test/program3.tiny. Nested loops with a call, supported from <code>TinyLanguage3</code> on.
+ */
+public class Program3Benchmark extends ExecutionBenchmark {
+
+    @Param({ "tiny", "tiny-tags", "tiny3" })
+    public String language;
+
+    @Param({ "1000", "10000" })
+    public int size;
+
+    @Override
+    protected String program() {
+        return "program3";
+    }
+
+    @Override
+    protected String languageId() {
+        return language;
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+}
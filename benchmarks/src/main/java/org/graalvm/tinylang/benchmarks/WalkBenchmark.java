@@ -0,0 +1,101 @@
+package org.graalvm.tinylang.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.tinylang.SExpression;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walks a generated corpus without building bytecode. Besides walks per second
+ * the secondary <code>tokens</code> result reports visited tokens per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WalkBenchmark {
+
+    @Param({ "100", "10000" })
+    public int functions;
+
+    @Param({ "1", "5" })
+    public int depth;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = new CorpusGenerator().functions(functions).depth(depth).generate();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Tokens {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public int walk(Tokens counter) {
+        SExpression.Symbols symbols = new SExpression.Symbols();
+        CountingVisitor visitor = new CountingVisitor();
+        SExpression.walk(text, symbols, visitor);
+        counter.tokens += visitor.tokens;
+        return symbols.size();
+    }
+
+    static final class CountingVisitor implements SExpression.SymbolVisitor {
+
+        long tokens;
+
+        @Override
+        public void onOpen(int opcode, int operator, SExpression.Identifiers identifiers) {
+            tokens += 2;
+        }
+
+        @Override
+        public void onIdentifier(int symbol) {
+            tokens++;
+        }
+
+        @Override
+        public void onInteger(int value) {
+            tokens++;
+        }
+
+        @Override
+        public void onDouble(double value) {
+            tokens++;
+        }
+
+        @Override
+        public void onString(int startIndex, int length) {
+            tokens++;
+        }
+
+        @Override
+        public void onClose(int opcode, int operator, int startIndex, int length) {
+            tokens++;
+        }
+    }
+
+}
@@ -1,7 +1,16 @@
 package org.graalvm.tinylang;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
@@ -14,10 +23,38 @@ import com.oracle.truffle.api.CompilerDirectives;
  * (add (add 1 2) 3)
  * </pre>
  * 
- * Use {@link #walk(String, Visitor)} to traverse any SExpression string.
+ * Use {@link #walk(String, Visitor)} to traverse any SExpression string. Use
+ * {@link #walk(CharSequence, Symbols, SymbolVisitor)} to traverse large sources
+ * without allocating per token.
  */
 public final class SExpression {
 
+    /*
+     * Opcodes of the known operators. The operators are interned first by every
+     * symbol table, so the opcode of an operator is equal to its symbol id.
+     */
+    public static final int OP_ADD = 0;
+    public static final int OP_LT = 1;
+    public static final int OP_WHILE = 2;
+    public static final int OP_BLOCK = 3;
+    public static final int OP_SET = 4;
+    public static final int OP_DEF = 5;
+    public static final int OP_CALL = 6;
+    public static final int OP_IF = 7;
+    public static final int OP_EQ = 8;
+    public static final int OP_LEN = 9;
+    public static final int OP_NEW_ARRAY = 10;
+    public static final int OP_GET = 11;
+    public static final int OP_PUT = 12;
+    public static final int OP_RECORD = 13;
+    public static final int OP_FIELD = 14;
+    public static final int OP_SET_FIELD = 15;
+    public static final int OP_UNKNOWN = -1;
+
+    public static final int NO_SYMBOL = -1;
+
+    private static final String[] OPERATORS = { "add", "lt", "while", "block", "set", "def", "call", "if", "eq", "len", "new-array", "get", "put", "record", "field", "set-field" };
+
     public static void walk(String source, SExpression.Visitor callback) {
         Token prev = null;
         Token current;
@@ -77,6 +114,41 @@ public final class SExpression {
         }
     }
 
+    /**
+     * Walks the source without allocating per token. Operators are reported as
+     * opcodes, identifiers as symbols interned in the given table and strings as
+     * offsets into the source. The characters are read incrementally, so the
+     * source may be a {@link CharBuffer} or a view returned by {@link #map(Path)}.
+     */
+    public static void walk(CharSequence source, Symbols symbols, SymbolVisitor visitor) {
+        new Lexer(source, 0, source.length(), symbols).walk(visitor);
+    }
+
+    /**
+     * Walks the forms between <code>startIndex</code> and <code>endIndex</code> of
+     * the source, e.g. a form whose range was recorded by an earlier walk.
+     */
+    public static void walk(CharSequence source, int startIndex, int endIndex, Symbols symbols, SymbolVisitor visitor) {
+        new Lexer(source, startIndex, endIndex, symbols).walk(visitor);
+    }
+
+    /**
+     * Maps a UTF-8 file into memory. Pure ASCII files are read directly from the
+     * mapped bytes, other files are decoded into a {@link CharBuffer} once.
+     */
+    public static CharSequence map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            int length = bytes.limit();
+            for (int i = 0; i < length; i++) {
+                if (bytes.get(i) < 0) {
+                    return StandardCharsets.UTF_8.decode(bytes);
+                }
+            }
+            return new AsciiSequence(bytes, 0, length);
+        }
+    }
+
     private static Token nextToken(String source, Token prev) {
         int length = source.length();
         int charIndex = prev != null ? prev.end : 0;
@@ -209,6 +281,489 @@ public final class SExpression {
         void onClose(String operation, int startIndex, int length);
     }
 
+    public interface SymbolVisitor {
+
+        /**
+         * Invoked when an SExpression was opened.
+         * 
+         * @param opcode      the opcode of the operation or {@link #OP_UNKNOWN}
+         * @param operator    the symbol of the operation used
+         * @param identifiers allows to consume identifier symbols depending on
+         *                    operation
+         */
+        void onOpen(int opcode, int operator, Identifiers identifiers);
+
+        void onIdentifier(int symbol);
+
+        void onInteger(int value);
+
+        void onDouble(double value);
+
+        /**
+         * Invoked for a string literal. The offsets exclude the quotes.
+         */
+        void onString(int startIndex, int length);
+
+        void onClose(int opcode, int operator, int startIndex, int length);
+    }
+
+    public interface Identifiers {
+
+        /**
+         * Consumes the next identifier and returns its symbol, or
+         * {@link SExpression#NO_SYMBOL} if the next token is not an identifier.
+         */
+        int next();
+
+        /**
+         * Returns <code>true</code> if the current form is the last element of its
+         * <code>count</code> enclosing forms, innermost first. Forms whose bit is set
+         * in <code>anyElement</code> may have further elements, e.g. the else arm
+         * after a then arm. Does not consume any tokens.
+         */
+        boolean isLastOf(int count, long anyElement);
+
+        /**
+         * Consumes the remaining elements of the current form without visiting
+         * them. The closing parenthesis is still visited.
+         */
+        void skipRest();
+
+        /**
+         * Returns the index of the operator of the current form.
+         */
+        int operatorStart();
+    }
+
+    /**
+     * Interns identifiers into dense int symbols. Looking up an identifier that was
+     * seen before does not allocate.
+     */
+    public static final class Symbols {
+
+        private String[] names = new String[64];
+        private int[] hashes = new int[64];
+        // symbol + 1 per slot, 0 marks a free slot
+        private int[] table = new int[128];
+        private int size;
+
+        public Symbols() {
+            for (String operator : OPERATORS) {
+                intern(operator, 0, operator.length());
+            }
+        }
+
+        public int intern(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            int mask = table.length - 1;
+            int index = (hash ^ (hash >>> 16)) & mask;
+            int entry;
+            while ((entry = table[index]) != 0) {
+                int symbol = entry - 1;
+                if (hashes[symbol] == hash && matches(names[symbol], text, start, end)) {
+                    return symbol;
+                }
+                index = (index + 1) & mask;
+            }
+            return add(text.subSequence(start, end).toString(), hash, index);
+        }
+
+        public String name(int symbol) {
+            return names[symbol];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private int add(String name, int hash, int index) {
+            int symbol = size++;
+            if (symbol == names.length) {
+                names = Arrays.copyOf(names, symbol * 2);
+                hashes = Arrays.copyOf(hashes, symbol * 2);
+            }
+            names[symbol] = name;
+            hashes[symbol] = hash;
+            table[index] = symbol + 1;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return symbol;
+        }
+
+        private void rehash() {
+            int[] newTable = new int[table.length * 2];
+            int mask = newTable.length - 1;
+            for (int symbol = 0; symbol < size; symbol++) {
+                int hash = hashes[symbol];
+                int index = (hash ^ (hash >>> 16)) & mask;
+                while (newTable[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                newTable[index] = symbol + 1;
+            }
+            table = newTable;
+        }
+
+        private static boolean matches(String name, CharSequence text, int start, int end) {
+            if (name.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Tokenizer that keeps the current token in fields instead of allocating a
+     * {@link Token} per token. The open operations are kept on a primitive stack.
+     */
+    static final class Lexer implements Identifiers {
+
+        private final CharSequence source;
+        private final int length;
+        private final Symbols symbols;
+
+        private Kind kind;
+        private int start;
+        private int end;
+
+        private int[] operators = new int[16];
+        private int[] operatorStarts = new int[16];
+        private int depth;
+
+        Lexer(CharSequence source, int startIndex, int endIndex, Symbols symbols) {
+            this.source = source;
+            this.length = endIndex;
+            this.end = startIndex;
+            this.symbols = symbols;
+        }
+
+        void walk(SymbolVisitor visitor) {
+            boolean afterOpen = false;
+            while (advance()) {
+                if (afterOpen) {
+                    if (kind != Kind.IDENTIFIER) {
+                        throw new RuntimeException("Expected identifier at but got " + kind);
+                    }
+                    int operator = symbols.intern(source, start, end);
+                    push(operator, start);
+                    visitor.onOpen(opcode(operator), operator, this);
+                    afterOpen = false;
+                    continue;
+                }
+                switch (kind) {
+                case OPEN:
+                    afterOpen = true;
+                    break;
+                case CLOSE:
+                    if (depth == 0) {
+                        throw new RuntimeException("Unexpected ')' at");
+                    }
+                    depth--;
+                    int operator = operators[depth];
+                    int operatorStart = operatorStarts[depth];
+                    visitor.onClose(opcode(operator), operator, operatorStart - 1, end - operatorStart + 1);
+                    break;
+                case IDENTIFIER:
+                    visitor.onIdentifier(symbols.intern(source, start, end));
+                    break;
+                case INTEGER:
+                    visitor.onInteger(parseInteger());
+                    break;
+                case DOUBLE:
+                    visitor.onDouble(parseDouble());
+                    break;
+                case STRING:
+                    visitor.onString(start + 1, end - start - 2);
+                    break;
+                }
+            }
+            if (afterOpen) {
+                throw new RuntimeException("Invalid trailing '('");
+            }
+        }
+
+        @Override
+        public int next() {
+            Kind prevKind = kind;
+            int prevStart = start;
+            int prevEnd = end;
+            if (advance() && kind == Kind.IDENTIFIER) {
+                return symbols.intern(source, start, end);
+            }
+            // not an identifier, leave it for the walk
+            kind = prevKind;
+            start = prevStart;
+            end = prevEnd;
+            return NO_SYMBOL;
+        }
+
+        @Override
+        public boolean isLastOf(int count, long anyElement) {
+            Kind prevKind = kind;
+            int prevStart = start;
+            int prevEnd = end;
+            try {
+                if (!advanceToClose()) {
+                    return false;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (i < Long.SIZE && (anyElement & (1L << i)) != 0) {
+                        if (!advanceToClose()) {
+                            return false;
+                        }
+                    } else if (!advance() || kind != Kind.CLOSE) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                kind = prevKind;
+                start = prevStart;
+                end = prevEnd;
+            }
+        }
+
+        /**
+         * Advances to the closing parenthesis of the current form.
+         */
+        private boolean advanceToClose() {
+            int nesting = 1;
+            while (nesting > 0) {
+                if (!advance()) {
+                    return false;
+                }
+                if (kind == Kind.OPEN) {
+                    nesting++;
+                } else if (kind == Kind.CLOSE) {
+                    nesting--;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void skipRest() {
+            int nesting = 1;
+            while (true) {
+                Kind prevKind = kind;
+                int prevStart = start;
+                int prevEnd = end;
+                if (!advance()) {
+                    return;
+                }
+                if (kind == Kind.OPEN) {
+                    nesting++;
+                } else if (kind == Kind.CLOSE && --nesting == 0) {
+                    // leave the closing parenthesis for the walk
+                    kind = prevKind;
+                    start = prevStart;
+                    end = prevEnd;
+                    return;
+                }
+            }
+        }
+
+        private static int opcode(int operator) {
+            return operator < OPERATORS.length ? operator : OP_UNKNOWN;
+        }
+
+        @Override
+        public int operatorStart() {
+            return operatorStarts[depth - 1];
+        }
+
+        private void push(int operator, int operatorStart) {
+            if (depth == operators.length) {
+                operators = Arrays.copyOf(operators, depth * 2);
+                operatorStarts = Arrays.copyOf(operatorStarts, depth * 2);
+            }
+            operators[depth] = operator;
+            operatorStarts[depth] = operatorStart;
+            depth++;
+        }
+
+        private int parseInteger() {
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(source.charAt(i), 10);
+                if (digit < 0 || value > (Integer.MAX_VALUE - digit) / 10) {
+                    throw new RuntimeException("Invalid number '" + source.subSequence(start, end) + ".");
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+                        1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+        /*
+         * Plain decimals with at most 15 digits are parsed in place. Both the digits
+         * and the power of ten are exact doubles then, so the division is correctly
+         * rounded. Other literals, e.g. with an exponent, use Double.parseDouble.
+         */
+        private double parseDouble() {
+            long digits = 0;
+            int digitCount = 0;
+            int fractionDigits = -1;
+            for (int i = start; i < end; i++) {
+                char c = source.charAt(i);
+                if (c == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                    continue;
+                }
+                int digit = Character.digit(c, 10);
+                if (digit < 0 || ++digitCount > 15) {
+                    return Double.parseDouble(source.subSequence(start, end).toString());
+                }
+                digits = digits * 10 + digit;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            }
+            return digits / POWERS_OF_TEN[Math.max(fractionDigits, 0)];
+        }
+
+        /**
+         * Lexes the token following the current one. Returns <code>false</code> and
+         * leaves the current token untouched if the end of the source was reached.
+         */
+        private boolean advance() {
+            int charIndex = end;
+            while (charIndex < length) {
+                char c = source.charAt(charIndex);
+                if (Character.isWhitespace(c)) {
+                    charIndex++;
+                    continue;
+                } else if (c == '(') {
+                    return token(Kind.OPEN, charIndex, charIndex + 1);
+                } else if (c == ')') {
+                    return token(Kind.CLOSE, charIndex, charIndex + 1);
+                }
+
+                if (c == ';') {
+                    while (charIndex < length) {
+                        char cc = source.charAt(charIndex);
+                        if (cc == '\n') {
+                            break;
+                        }
+                        charIndex++;
+                    }
+                    charIndex++;
+                    continue;
+                }
+
+                int startPos = charIndex;
+                char cc = (char) -1; // invalid char
+                boolean hasDot = false;
+                while (charIndex + 1 < length) {
+                    cc = source.charAt(charIndex + 1);
+                    if (Character.isWhitespace(cc) || cc == '(' || cc == ')' || cc == ';') {
+                        break;
+                    }
+                    if (cc == '.') {
+                        hasDot = true;
+                    }
+                    charIndex++;
+                }
+                Kind tokenKind;
+                if (c == '\"' && cc == '\"') {
+                    tokenKind = Kind.STRING;
+                } else if (Character.isDigit(c)) {
+                    tokenKind = hasDot ? Kind.DOUBLE : Kind.INTEGER;
+                } else {
+                    tokenKind = Kind.IDENTIFIER;
+                }
+                return token(tokenKind, startPos, charIndex + 1);
+            }
+            return false;
+        }
+
+        private boolean token(Kind tokenKind, int tokenStart, int tokenEnd) {
+            this.kind = tokenKind;
+            this.start = tokenStart;
+            this.end = tokenEnd;
+            return true;
+        }
+    }
+
+    /**
+     * Character view of ASCII bytes, used for memory mapped sources.
+     */
+    static final class AsciiSequence implements CharSequence {
+
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+        private int hash;
+
+        AsciiSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new AsciiSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length];
+            bytes.get(offset, copy);
+            return new String(copy, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = hash;
+            if (h == 0) {
+                for (int i = 0; i < length; i++) {
+                    h = 31 * h + bytes.get(offset + i);
+                }
+                hash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AsciiSequence other) || other.length != length || other.hashCode() != hashCode()) {
+                return false;
+            }
+            return CharSequence.compare(this, other) == 0;
+        }
+    }
+
     record Token(Kind kind, int start, int end) {
 
         String text(String source) {
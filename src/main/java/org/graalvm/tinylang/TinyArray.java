@@ -0,0 +1,155 @@
+package org.graalvm.tinylang;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+
+/**
+ * Fixed-length array created with <code>(new-array length)</code>. The storage
+ * starts as <code>int[]</code> filled with 0 and is widened along the numeric
+ * tower to <code>long[]</code> and <code>double[]</code> when a wider number is
+ * put, and to <code>Object[]</code> for any other value. Storage is never
+ * narrowed again, so the operations in {@link TinyLanguage.TinyRootNode}
+ * specialize on the storage of the arrays they see.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class TinyArray implements TruffleObject {
+
+    Object storage;
+    final int length;
+
+    TinyArray(int length) {
+        this.storage = new int[length];
+        this.length = length;
+    }
+
+    TinyArray(Object[] values) {
+        this.storage = values;
+        this.length = values.length;
+    }
+
+    boolean isInt() {
+        return storage instanceof int[];
+    }
+
+    boolean isLong() {
+        return storage instanceof long[];
+    }
+
+    boolean isDouble() {
+        return storage instanceof double[];
+    }
+
+    boolean isObject() {
+        return storage instanceof Object[];
+    }
+
+    @TruffleBoundary
+    Object read(int index) {
+        if (storage instanceof int[] s) {
+            return s[index];
+        } else if (storage instanceof long[] s) {
+            return s[index];
+        } else if (storage instanceof double[] s) {
+            return s[index];
+        }
+        return ((Object[]) storage)[index];
+    }
+
+    /**
+     * Widens the storage if it cannot hold the value, then puts the value.
+     */
+    @TruffleBoundary
+    void generalizeAndWrite(int index, Object value) {
+        if (!fits(value)) {
+            widen(value);
+        }
+        write(index, value);
+    }
+
+    private void widen(Object value) {
+        if (value instanceof Long && isInt()) {
+            long[] wide = new long[length];
+            int[] s = (int[]) storage;
+            for (int i = 0; i < length; i++) {
+                wide[i] = s[i];
+            }
+            storage = wide;
+        } else if (value instanceof Double && (isInt() || isLong())) {
+            double[] wide = new double[length];
+            for (int i = 0; i < length; i++) {
+                wide[i] = ((Number) read(i)).doubleValue();
+            }
+            storage = wide;
+        } else {
+            Object[] wide = new Object[length];
+            for (int i = 0; i < length; i++) {
+                wide[i] = read(i);
+            }
+            storage = wide;
+        }
+    }
+
+    private boolean fits(Object value) {
+        if (isObject() || value instanceof Integer) {
+            return true;
+        } else if (value instanceof Long) {
+            return !isInt();
+        } else if (value instanceof Double) {
+            return isDouble();
+        }
+        return false;
+    }
+
+    private void write(int index, Object value) {
+        if (storage instanceof int[] s) {
+            s[index] = (int) value;
+        } else if (storage instanceof long[] s) {
+            s[index] = ((Number) value).longValue();
+        } else if (storage instanceof double[] s) {
+            s[index] = ((Number) value).doubleValue();
+        } else {
+            ((Object[]) storage)[index] = value;
+        }
+    }
+
+    @ExportMessage
+    boolean hasArrayElements() {
+        return true;
+    }
+
+    @ExportMessage
+    long getArraySize() {
+        return length;
+    }
+
+    @ExportMessage
+    boolean isArrayElementReadable(long index) {
+        return index >= 0 && index < length;
+    }
+
+    @ExportMessage
+    Object readArrayElement(long index) throws InvalidArrayIndexException {
+        if (!isArrayElementReadable(index)) {
+            throw InvalidArrayIndexException.create(index);
+        }
+        return read((int) index);
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    Object toDisplayString(@SuppressWarnings("unused") boolean allowSideEffects) {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(read(i));
+        }
+        return b.append(']').toString();
+    }
+
+}
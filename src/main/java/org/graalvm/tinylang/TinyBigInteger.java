@@ -0,0 +1,162 @@
+package org.graalvm.tinylang;
+
+import java.math.BigInteger;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+
+/**
+ * Integer that overflowed the long range. {@link BigInteger} is not an interop
+ * value, so it is wrapped and exported as a number.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class TinyBigInteger implements TruffleObject {
+
+    final BigInteger value;
+
+    TinyBigInteger(BigInteger value) {
+        this.value = value;
+    }
+
+    @TruffleBoundary
+    TinyBigInteger add(TinyBigInteger other) {
+        return new TinyBigInteger(value.add(other.value));
+    }
+
+    @TruffleBoundary
+    int compareTo(TinyBigInteger other) {
+        return value.compareTo(other.value);
+    }
+
+    /**
+     * Nearest double, mixing with doubles widens to double.
+     */
+    @TruffleBoundary
+    double doubleValue() {
+        return value.doubleValue();
+    }
+
+    @ExportMessage
+    boolean isNumber() {
+        return true;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInByte() {
+        return value.bitLength() < Byte.SIZE;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    byte asByte() throws UnsupportedMessageException {
+        if (fitsInByte()) {
+            return value.byteValue();
+        }
+        throw UnsupportedMessageException.create();
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInShort() {
+        return value.bitLength() < Short.SIZE;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    short asShort() throws UnsupportedMessageException {
+        if (fitsInShort()) {
+            return value.shortValue();
+        }
+        throw UnsupportedMessageException.create();
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInInt() {
+        return value.bitLength() < Integer.SIZE;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    int asInt() throws UnsupportedMessageException {
+        if (fitsInInt()) {
+            return value.intValue();
+        }
+        throw UnsupportedMessageException.create();
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInLong() {
+        return value.bitLength() < Long.SIZE;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    long asLong() throws UnsupportedMessageException {
+        if (fitsInLong()) {
+            return value.longValue();
+        }
+        throw UnsupportedMessageException.create();
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInFloat() {
+        // exactly representable with the 24 bit mantissa
+        return value.bitLength() <= 24;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    float asFloat() throws UnsupportedMessageException {
+        if (fitsInFloat()) {
+            return value.floatValue();
+        }
+        throw UnsupportedMessageException.create();
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInDouble() {
+        // exactly representable with the 53 bit mantissa
+        return value.bitLength() <= 53;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    double asDouble() throws UnsupportedMessageException {
+        if (fitsInDouble()) {
+            return value.doubleValue();
+        }
+        throw UnsupportedMessageException.create();
+    }
+
+    @ExportMessage
+    boolean fitsInBigInteger() {
+        return true;
+    }
+
+    @ExportMessage
+    BigInteger asBigInteger() {
+        return value;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    Object toDisplayString(@SuppressWarnings("unused") boolean allowSideEffects) {
+        return value.toString();
+    }
+
+    @Override
+    @TruffleBoundary
+    public String toString() {
+        return value.toString();
+    }
+
+}
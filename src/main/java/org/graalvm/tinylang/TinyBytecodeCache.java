@@ -0,0 +1,311 @@
+package org.graalvm.tinylang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.home.Version;
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.TruffleFile;
+import com.oracle.truffle.api.TruffleLogger;
+import com.oracle.truffle.api.bytecode.BytecodeRootNodes;
+import com.oracle.truffle.api.bytecode.serialization.BytecodeDeserializer;
+import com.oracle.truffle.api.bytecode.serialization.BytecodeSerializer;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.strings.TruffleString;
+
+/**
+ * Persistent cache of serialized {@link TinyRootNode} bytecode. Cache files are
+ * named after the SHA-256 hash of the source characters and contain a small
+ * header followed by the Bytecode DSL serialization of all roots of a source.
+ * <pre>
+ * int    magic
+ * int    format version
+ * long   fingerprint of the operations and the Truffle version
+ * int    root count
+ * string root name (per root, in BytecodeRootNodes order)
+ * int    function index of the root or -1 (per root)
+ * byte[] serialized bytecode
+ * </pre>
+ * Function constants are written as their index, followed by the name and the
+ * target function for functions that forward to another function. Strings are
+ * written as their UTF-8 length and bytes, so they are not limited to the 64 KB
+ * of <code>writeUTF</code>. The
+ * serialized bytecode is only valid for the generated interpreter that wrote
+ * it, so files written with other operations or another Truffle version are
+ * ignored and replaced. <code>VERSION</code> only changes with the header and
+ * constant format.
+ */
+final class TinyBytecodeCache {
+
+    private static final int MAGIC = 0x54494e59; // TINY
+    private static final int VERSION = 5;
+    private static final long FINGERPRINT = fingerprint();
+    private static final String EXTENSION = ".tinyc";
+
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_DOUBLE = 2;
+    private static final byte TAG_STRING = 3;
+    private static final byte TAG_FUNCTION = 4;
+    private static final byte TAG_SOURCE = 5;
+    private static final byte TAG_NAME = 6;
+
+    private static final TruffleLogger LOG = TruffleLogger.getLogger("tiny", TinyBytecodeCache.class);
+
+    private static final BytecodeSerializer SERIALIZER = (context, buffer, object) -> {
+        if (object instanceof Integer value) {
+            buffer.writeByte(TAG_INT);
+            buffer.writeInt(value);
+        } else if (object instanceof Double value) {
+            buffer.writeByte(TAG_DOUBLE);
+            buffer.writeDouble(value);
+        } else if (object instanceof TruffleString value) {
+            buffer.writeByte(TAG_STRING);
+            writeString(buffer, value.toJavaStringUncached());
+        } else if (object instanceof String name) {
+            // field names of records
+            buffer.writeByte(TAG_NAME);
+            writeString(buffer, name);
+        } else if (object instanceof TinyFunction function) {
+            // functions may be referenced before their root exists
+            buffer.writeByte(TAG_FUNCTION);
+            writeFunction(buffer, function);
+        } else if (object instanceof Source) {
+            // the source is identified by the cache key
+            buffer.writeByte(TAG_SOURCE);
+        } else {
+            throw new IllegalArgumentException("Unsupported constant " + object);
+        }
+    };
+
+    private TinyBytecodeCache() {
+    }
+
+    /**
+     * Returns the roots for a source from the cache directory, or parses the source
+     * and stores the result if no valid cache entry exists.
+     */
+    static BytecodeRootNodes<TinyRootNode> parse(TinyLanguage language, Source source, TruffleFile directory) {
+        TruffleFile file = directory.resolve(key(source.getCharacters()) + EXTENSION);
+        try {
+            BytecodeRootNodes<TinyRootNode> nodes = load(language, source, file);
+            if (nodes != null) {
+                return nodes;
+            }
+        } catch (NoSuchFileException e) {
+            // not cached yet
+        } catch (IOException e) {
+            LOG.fine(() -> "Ignoring invalid cache file " + file + ": " + e);
+        }
+        BytecodeRootNodes<TinyRootNode> nodes = TinyLanguage.parse(language, source);
+        try {
+            store(language, nodes, source, directory, file);
+        } catch (IOException e) {
+            // the cache is an optimization only
+            LOG.fine(() -> "Could not write cache file " + file + ": " + e);
+        }
+        return nodes;
+    }
+
+    private static BytecodeRootNodes<TinyRootNode> load(TinyLanguage language, Source source, TruffleFile file) throws IOException {
+        byte[] bytes = file.readAllBytes();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != FINGERPRINT) {
+            return null;
+        }
+        int rootCount = in.readInt();
+        String[] names = new String[rootCount];
+        int[] functionIndices = new int[rootCount];
+        Map<Integer, TinyFunction> functions = new HashMap<>();
+        for (int i = 0; i < rootCount; i++) {
+            names[i] = readString(in);
+            functionIndices[i] = in.readInt();
+            if (functionIndices[i] >= 0) {
+                functions.put(functionIndices[i], new TinyFunction(names[i], functionIndices[i]));
+            }
+        }
+        int offset = bytes.length - in.available();
+        BytecodeDeserializer deserializer = (context, buffer) -> deserialize(buffer, source, functions);
+        BytecodeRootNodes<TinyRootNode> nodes = TinyRootNodeGen.deserialize(language, language.bytecodeConfig,
+                () -> new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset)), deserializer);
+        List<TinyRootNode> roots = nodes.getNodes();
+        if (roots.size() != names.length) {
+            throw new IOException("Root count mismatch.");
+        }
+        for (int i = 0; i < rootCount; i++) {
+            TinyRootNode root = roots.get(i);
+            root.name = names[i];
+            if (functionIndices[i] >= 0) {
+                root.function = functions.get(functionIndices[i]);
+                root.function.root = root;
+            }
+        }
+        return nodes;
+    }
+
+    private static Object deserialize(DataInput buffer, Source source, Map<Integer, TinyFunction> functions) throws IOException {
+        byte tag = buffer.readByte();
+        switch (tag) {
+        case TAG_INT:
+            return buffer.readInt();
+        case TAG_DOUBLE:
+            return buffer.readDouble();
+        case TAG_STRING:
+            return TruffleString.fromJavaStringUncached(readString(buffer), TinyLanguage.ENCODING);
+        case TAG_NAME:
+            return readString(buffer);
+        case TAG_FUNCTION:
+            return readFunction(buffer, functions);
+        case TAG_SOURCE:
+            return source;
+        default:
+            throw new IOException("Invalid constant tag " + tag);
+        }
+    }
+
+    private static void writeFunction(DataOutput buffer, TinyFunction function) throws IOException {
+        buffer.writeInt(function.index);
+        buffer.writeBoolean(function.forward != null);
+        if (function.forward != null) {
+            writeString(buffer, function.name);
+            writeFunction(buffer, function.forward);
+        }
+    }
+
+    private static TinyFunction readFunction(DataInput buffer, Map<Integer, TinyFunction> functions) throws IOException {
+        int index = buffer.readInt();
+        if (!buffer.readBoolean()) {
+            TinyFunction function = functions.get(index);
+            if (function == null) {
+                throw new IOException("Invalid function index " + index);
+            }
+            return function;
+        }
+        String name = readString(buffer);
+        TinyFunction forward = readFunction(buffer, functions);
+        TinyFunction function = functions.get(index);
+        if (function == null) {
+            function = new TinyFunction(name, index);
+            function.forward = forward;
+            functions.put(index, function);
+        }
+        return function;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void store(TinyLanguage language, BytecodeRootNodes<TinyRootNode> nodes, Source source, TruffleFile directory, TruffleFile file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutput out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(FINGERPRINT);
+        List<TinyRootNode> roots = nodes.getNodes();
+        out.writeInt(roots.size());
+        for (TinyRootNode root : roots) {
+            writeString(out, root.name);
+            out.writeInt(root.function != null ? root.function.index : -1);
+        }
+        TinyRootNodeGen.serialize(out, SERIALIZER, TinyLanguage.createParser(language, source));
+
+        directory.createDirectories();
+        // write to a temporary file first so concurrent readers never see partial files
+        TruffleFile temp = directory.resolve(file.getName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try (OutputStream stream = temp.newOutputStream()) {
+            bytes.writeTo(stream);
+        }
+        temp.move(file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * The operations are the nested classes of the root node, their
+     * specializations determine the generated instructions. The root node
+     * annotations hold the bytecode configuration.
+     */
+    private static long fingerprint() {
+        List<String> parts = new ArrayList<>();
+        parts.add(Version.getCurrent().toString());
+        addDeclarations(parts, TinyRootNode.class);
+        for (Class<?> operation : TinyRootNode.class.getDeclaredClasses()) {
+            addDeclarations(parts, operation);
+        }
+        Collections.sort(parts);
+        MessageDigest digest = sha256();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static void addDeclarations(List<String> parts, Class<?> c) {
+        for (Annotation annotation : c.getDeclaredAnnotations()) {
+            parts.add(c.getName() + " " + annotation);
+        }
+        for (Method method : c.getDeclaredMethods()) {
+            parts.add(method.toGenericString() + " " + Arrays.toString(method.getDeclaredAnnotations()) + " " + Arrays.deepToString(method.getParameterAnnotations()));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String key(CharSequence characters) {
+        MessageDigest digest = sha256();
+        byte[] chunk = new byte[8192];
+        int count = 0;
+        int length = characters.length();
+        for (int i = 0; i < length; i++) {
+            char c = characters.charAt(i);
+            chunk[count++] = (byte) (c >>> 8);
+            chunk[count++] = (byte) c;
+            if (count == chunk.length) {
+                digest.update(chunk, 0, count);
+                count = 0;
+            }
+        }
+        digest.update(chunk, 0, count);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+}
@@ -0,0 +1,302 @@
+package org.graalvm.tinylang;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Pool of initialized tiny contexts on a shared engine, for embedders that
+ * evaluate many small scripts. Contexts are created and initialized ahead of
+ * time, so borrowing one does not pay for context setup. Since the language
+ * uses the shared context policy, parsed and compiled code is reused by all
+ * contexts of the engine.
+ * <pre>
+ * try (PooledContext pooled = pool.borrow()) {
+ *     pooled.eval(source);
+ * }
+ * </pre>
+ * Returned contexts are reset and kept for reuse unless they are poisoned,
+ * i.e. they were cancelled, exited or failed internally, or still hold state
+ * of the borrower after the reset, or more than
+ * <code>maxIdle</code> contexts are idle. Eviction is lazy: idle contexts
+ * older than <code>idleTimeout</code> are closed by the next borrow or return,
+ * or by {@link #evictExpired()}. The pool starts no threads, embedders that
+ * need idle contexts closed while the pool is unused call
+ * {@link #evictExpired()} from their own scheduler.
+ */
+public final class TinyContextPool implements AutoCloseable {
+
+    private final Engine engine;
+    private final boolean ownsEngine;
+    private final Consumer<Context.Builder> configuration;
+    private final int maxIdle;
+    private final long idleTimeoutNanos;
+
+    // most recently returned first, guarded by this
+    private final ArrayDeque<IdleContext> idle = new ArrayDeque<>();
+    private boolean closed;
+    private int borrowed;
+    private long created;
+    private long reused;
+    private long evicted;
+    private long poisoned;
+
+    /**
+     * Creates a pool with its own engine, closed with the pool.
+     */
+    public TinyContextPool(int maxIdle, Duration idleTimeout) {
+        this(Engine.create("tiny"), true, maxIdle, idleTimeout, (b) -> {
+        });
+    }
+
+    /**
+     * Creates a pool on an engine owned by the caller. The configuration is
+     * applied to the builder of every context.
+     */
+    public TinyContextPool(Engine engine, int maxIdle, Duration idleTimeout, Consumer<Context.Builder> configuration) {
+        this(engine, false, maxIdle, idleTimeout, configuration);
+    }
+
+    private TinyContextPool(Engine engine, boolean ownsEngine, int maxIdle, Duration idleTimeout, Consumer<Context.Builder> configuration) {
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+        this.maxIdle = maxIdle;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.configuration = configuration;
+    }
+
+    /**
+     * Creates contexts until <code>count</code> contexts are idle, at most
+     * <code>maxIdle</code>.
+     */
+    public void prewarm(int count) {
+        int target = Math.min(count, maxIdle);
+        while (true) {
+            synchronized (this) {
+                if (closed || idle.size() >= target) {
+                    return;
+                }
+            }
+            Context context = createContext();
+            synchronized (this) {
+                created++;
+                if (closed) {
+                    context.close();
+                    return;
+                }
+                idle.addLast(new IdleContext(context, System.nanoTime()));
+            }
+        }
+    }
+
+    public PooledContext borrow() {
+        IdleContext entry;
+        List<Context> expired;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Pool is closed.");
+            }
+            expired = removeExpired(System.nanoTime());
+            entry = idle.pollFirst();
+            if (entry != null) {
+                reused++;
+                borrowed++;
+            }
+        }
+        closeAll(expired);
+        if (entry != null) {
+            return new PooledContext(entry.context);
+        }
+        // counted once created, a failing configuration must not leak a borrow
+        Context context = createContext();
+        synchronized (this) {
+            created++;
+            borrowed++;
+        }
+        return new PooledContext(context);
+    }
+
+    private Context createContext() {
+        Context.Builder builder = Context.newBuilder("tiny").engine(engine);
+        configuration.accept(builder);
+        Context context = builder.build();
+        // runs TinyLanguage.createContext now instead of on the first eval
+        context.initialize("tiny");
+        return context;
+    }
+
+    private void release(Context context, boolean isPoisoned) {
+        boolean keep = !isPoisoned;
+        if (keep) {
+            try {
+                keep = reset(context);
+            } catch (PolyglotException | IllegalStateException e) {
+                keep = false;
+            }
+        }
+        List<Context> expired;
+        synchronized (this) {
+            borrowed--;
+            long now = System.nanoTime();
+            expired = removeExpired(now);
+            if (!keep) {
+                poisoned++;
+            } else if (closed || idle.size() >= maxIdle) {
+                evicted++;
+                keep = false;
+            } else {
+                idle.addFirst(new IdleContext(context, now));
+            }
+        }
+        closeAll(expired);
+        if (!keep) {
+            // cancels a poisoned context that is still running
+            context.close(true);
+        }
+    }
+
+    /*
+     * Tiny keeps no global state in its contexts, only the embedder can leave
+     * something behind. Returns false if bindings are left after the reset, e.g.
+     * members that cannot be removed, so the next borrower never sees them.
+     */
+    private static boolean reset(Context context) {
+        Value bindings = context.getPolyglotBindings();
+        for (String key : new ArrayList<>(bindings.getMemberKeys())) {
+            bindings.removeMember(key);
+        }
+        context.resetLimits();
+        return bindings.getMemberKeys().isEmpty() && context.getBindings("tiny").getMemberKeys().isEmpty();
+    }
+
+    private List<Context> removeExpired(long now) {
+        List<Context> expired = null;
+        // the oldest contexts are last
+        while (!idle.isEmpty() && now - idle.peekLast().since >= idleTimeoutNanos) {
+            if (expired == null) {
+                expired = new ArrayList<>();
+            }
+            expired.add(idle.pollLast().context);
+            evicted++;
+        }
+        return expired;
+    }
+
+    /**
+     * Closes the idle contexts that were not used for <code>idleTimeout</code>.
+     */
+    public void evictExpired() {
+        List<Context> expired;
+        synchronized (this) {
+            expired = removeExpired(System.nanoTime());
+        }
+        closeAll(expired);
+    }
+
+    private static void closeAll(List<Context> contexts) {
+        if (contexts != null) {
+            for (Context context : contexts) {
+                context.close();
+            }
+        }
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(created, reused, evicted, poisoned, idle.size(), borrowed);
+    }
+
+    /**
+     * Closes the idle contexts and the engine if it is owned by the pool. Borrowed
+     * contexts are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        List<Context> contexts = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (IdleContext entry : idle) {
+                contexts.add(entry.context);
+            }
+            idle.clear();
+        }
+        closeAll(contexts);
+        if (ownsEngine) {
+            engine.close();
+        }
+    }
+
+    /**
+     * Counters since the pool was created, and the current number of idle and
+     * borrowed contexts. <code>reused</code> borrows were served without creating
+     * a context.
+     */
+    public record Metrics(long created, long reused, long evicted, long poisoned, int idle, int borrowed) {
+    }
+
+    private record IdleContext(Context context, long since) {
+    }
+
+    /**
+     * A borrowed context, returned to the pool by {@link #close()}. Values
+     * obtained from the context must not be used after it was returned.
+     */
+    public final class PooledContext implements AutoCloseable {
+
+        private Context context;
+        private boolean isPoisoned;
+
+        private PooledContext(Context context) {
+            this.context = context;
+        }
+
+        public Context getContext() {
+            if (context == null) {
+                throw new IllegalStateException("Context was returned to the pool.");
+            }
+            return context;
+        }
+
+        /**
+         * Evaluates a source and poisons the context if it cannot be reused after
+         * the failure.
+         */
+        public Value eval(Source source) {
+            try {
+                return getContext().eval(source);
+            } catch (PolyglotException e) {
+                if (e.isCancelled() || e.isExit() || e.isInternalError() || e.isResourceExhausted()) {
+                    isPoisoned = true;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Closes the context instead of reusing it when it is returned.
+         */
+        public void poison() {
+            isPoisoned = true;
+        }
+
+        @Override
+        public void close() {
+            if (context != null) {
+                Context returned = context;
+                context = null;
+                release(returned, isPoisoned);
+            }
+        }
+    }
+
+}
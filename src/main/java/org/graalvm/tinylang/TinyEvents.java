@@ -0,0 +1,181 @@
+package org.graalvm.tinylang;
+
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.bytecode.BytecodeRootNodes;
+import com.oracle.truffle.api.source.Source;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events for the phases of running a tiny program. Events
+ * are only created if enabled with <code>--tiny.Events</code>, calls are
+ * additionally sampled with <code>--tiny.CallEventSampling=N</code>.
+ */
+final class TinyEvents {
+
+    private static int callCounter;
+
+    private TinyEvents() {
+    }
+
+    @Name("org.graalvm.tinylang.Parse")
+    @Label("Parse")
+    @Category("Tiny")
+    @Description("Walk of the SExpression source.")
+    static final class ParseEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Characters")
+        @DataAmount(DataAmount.BYTES)
+        long characters;
+
+        @Label("Symbols")
+        int symbols;
+    }
+
+    @Name("org.graalvm.tinylang.BytecodeBuild")
+    @Label("Bytecode Build")
+    @Category("Tiny")
+    @Description("Creation of the bytecode roots for a source, including the parse.")
+    static final class BuildEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Roots")
+        int roots;
+
+        @Label("Instructions")
+        int instructions;
+    }
+
+    @Name("org.graalvm.tinylang.Eval")
+    @Label("Eval")
+    @Category("Tiny")
+    @Description("Evaluation of a source by the launcher.")
+    static final class EvalEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Characters")
+        @DataAmount(DataAmount.BYTES)
+        long characters;
+    }
+
+    @Name("org.graalvm.tinylang.Call")
+    @Label("Call")
+    @Category("Tiny")
+    @Description("Sampled call of a tiny function.")
+    static final class CallEvent extends Event {
+
+        @Label("Function")
+        String function;
+    }
+
+    static ParseEvent beginParse(boolean enabled) {
+        if (!enabled) {
+            return null;
+        }
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitParse(ParseEvent event, Source source, int symbols) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.source = source.getName();
+        event.characters = source.getLength();
+        event.symbols = symbols;
+        event.commit();
+    }
+
+    static BuildEvent beginBuild(boolean enabled) {
+        if (!enabled) {
+            return null;
+        }
+        BuildEvent event = new BuildEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitBuild(BuildEvent event, Source source, BytecodeRootNodes<TinyRootNode> nodes) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.source = source.getName();
+        int instructions = 0;
+        for (TinyRootNode root : nodes.getNodes()) {
+            instructions += root.getBytecodeNode().getInstructionsAsList().size();
+        }
+        event.roots = nodes.getNodes().size();
+        event.instructions = instructions;
+        event.commit();
+    }
+
+    static EvalEvent beginEval(boolean enabled) {
+        if (!enabled) {
+            return null;
+        }
+        EvalEvent event = new EvalEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitEval(EvalEvent event, org.graalvm.polyglot.Source source) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.source = source.getName();
+        event.characters = source.getLength();
+        event.commit();
+    }
+
+    /**
+     * Starts a call event for every <code>sampling</code>th call. The counter is
+     * shared and not synchronized, which is good enough for sampling.
+     */
+    @TruffleBoundary
+    static CallEvent beginCall(int sampling) {
+        if (++callCounter % sampling != 0) {
+            return null;
+        }
+        CallEvent event = new CallEvent();
+        event.begin();
+        return event;
+    }
+
+    @TruffleBoundary
+    static void commitCall(CallEvent event, TinyFunction target) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.function = target.name;
+        event.commit();
+    }
+
+}
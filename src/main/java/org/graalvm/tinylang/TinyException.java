@@ -0,0 +1,40 @@
+package org.graalvm.tinylang;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.exception.AbstractTruffleException;
+import com.oracle.truffle.api.nodes.Node;
+
+/**
+ * Error raised by a tiny program at runtime.
+ */
+public final class TinyException extends AbstractTruffleException {
+
+    private static final long serialVersionUID = 1L;
+
+    private TinyException(String message, Node location) {
+        super(message, location);
+    }
+
+    @TruffleBoundary
+    static TinyException create(String message, Node location) {
+        return new TinyException(message, location);
+    }
+
+    /**
+     * Creates an error for an unexpected value. The message is only built behind
+     * the boundary.
+     */
+    @TruffleBoundary
+    static TinyException create(String message, Object value, Node location) {
+        return new TinyException(message + value, location);
+    }
+
+    /**
+     * Creates an error for operands of unexpected types.
+     */
+    @TruffleBoundary
+    static TinyException create(String message, Object left, Object right, Node location) {
+        return new TinyException(message + left + " and " + right, location);
+    }
+
+}
@@ -0,0 +1,204 @@
+package org.graalvm.tinylang;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Set;
+
+import org.graalvm.tinylang.TinyLanguage.Scope;
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+import com.oracle.truffle.api.nodes.ControlFlowException;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.source.Source;
+
+/**
+ * A function declared with <code>def</code>. Calls refer to the function instead
+ * of its root, so a function can be called before its body was built, e.g. by
+ * itself or by a function defined earlier. Functions are also values that can be
+ * stored in locals and called indirectly.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class TinyFunction implements TruffleObject {
+
+    final String name;
+    /*
+     * Index of the function in the order of its declaration in the source.
+     */
+    final int index;
+
+    /*
+     * Set once the body is built. This happens before the function can be called,
+     * or on the first call in lazy mode. A root built lazily is published with a
+     * release store and read with an acquire load by the interpreter, so other
+     * threads never see a partially built root. Compiled code reads the field as a
+     * constant.
+     */
+    @CompilationFinal TinyRootNode root;
+
+    private static final VarHandle ROOT;
+
+    static {
+        try {
+            ROOT = MethodHandles.lookup().findVarHandle(TinyFunction.class, "root", TinyRootNode.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /*
+     * The skipped body in lazy mode, cleared once the root is built.
+     */
+    LazyBody lazyBody;
+
+    /*
+     * The body the root was built from in lazy mode. Reruns of the parse, e.g. to
+     * materialize source sections, walk this range, which an incremental parse
+     * moves into the new source if the def moved without changes.
+     */
+    volatile LazyBody builtBody;
+
+    /*
+     * Set if the function was called before its def in a scope that ended before
+     * the def, and another function of the same name was already waiting for the
+     * def in the enclosing scope. The root is then the root of that function.
+     */
+    TinyFunction forward;
+
+    /*
+     * Names of the top-level functions the built body refers to, or null if
+     * unknown. Used to decide whether the root can be reused by an incremental
+     * parse.
+     */
+    Set<String> callees;
+
+    TinyFunction(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    RootCallTarget getCallTarget() {
+        TinyRootNode r = CompilerDirectives.inCompiledCode() ? root : getBuiltRoot();
+        if (r == null) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            r = parseLazily();
+        }
+        return r.getCallTarget();
+    }
+
+    /**
+     * Returns the root if it was built, also if it was built by another thread.
+     */
+    TinyRootNode getBuiltRoot() {
+        return (TinyRootNode) ROOT.getAcquire(this);
+    }
+
+    @TruffleBoundary
+    private synchronized TinyRootNode parseLazily() {
+        TinyRootNode r = root;
+        if (r == null) {
+            if (forward != null) {
+                r = (TinyRootNode) forward.getCallTarget().getRootNode();
+            } else {
+                builtBody = lazyBody;
+                r = TinyLanguage.parse(this).getNode(0);
+                lazyBody = null;
+            }
+            // pairs with the acquire load of getBuiltRoot
+            ROOT.setRelease(this, r);
+        }
+        return r;
+    }
+
+    /**
+     * Calls the function and runs the tail calls it returns with.
+     */
+    Object call(Node location, Object[] arguments) {
+        try {
+            return getCallTarget().call(location, arguments);
+        } catch (TailCallException tailCall) {
+            return tailCall.dispatch(location);
+        }
+    }
+
+    @ExportMessage
+    boolean isExecutable() {
+        return true;
+    }
+
+    @ExportMessage
+    Object execute(Object[] arguments, @Cached IndirectCallNode callNode) {
+        try {
+            return callNode.call(getCallTarget(), arguments);
+        } catch (TailCallException tailCall) {
+            return tailCall.dispatch(callNode);
+        }
+    }
+
+    @ExportMessage
+    Object toDisplayString(@SuppressWarnings("unused") boolean allowSideEffects) {
+        return name;
+    }
+
+    /**
+     * Moves the body of a function that was skipped to another range with the same
+     * text, either before or after its root was built.
+     */
+    synchronized void moveBody(LazyBody body) {
+        if (lazyBody != null) {
+            lazyBody = body;
+        } else {
+            builtBody = body;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Source range of a def that is parsed on the first call, and the scope it was
+     * declared in.
+     */
+    record LazyBody(TinyLanguage language, Source source, Scope scope, int startIndex, int length) {
+    }
+
+    /**
+     * Thrown by a call in tail position to unwind the frame of the caller before
+     * the target is invoked.
+     */
+    static final class TailCallException extends ControlFlowException {
+
+        private static final long serialVersionUID = 1L;
+
+        final transient TinyFunction function;
+        final transient Object[] arguments;
+
+        TailCallException(TinyFunction function, Object[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        Object dispatch(Node location) {
+            TailCallException tailCall = this;
+            while (true) {
+                try {
+                    return tailCall.function.getCallTarget().call(location, tailCall.arguments);
+                } catch (TailCallException e) {
+                    tailCall = e;
+                }
+            }
+        }
+    }
+
+}
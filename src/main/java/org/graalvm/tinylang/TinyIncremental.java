@@ -0,0 +1,158 @@
+package org.graalvm.tinylang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.graalvm.tinylang.TinyFunction.LazyBody;
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.source.Source;
+
+/**
+ * Reuse of def roots between parses of an edited source, enabled with
+ * <code>--tiny.Incremental</code>. Sources are matched by name. Top-level defs
+ * are skipped like in lazy mode and compared with the defs of the previous
+ * parse by their text. An unchanged def keeps its built root if all top-level
+ * functions it refers to are reused as well, since the root refers to their
+ * previous {@link TinyFunction}s. Source sections are only materialized on
+ * demand by rerunning the parse of the root, which then walks the def at its
+ * new position. A def that moved after the sections of its root were
+ * materialized is rebuilt instead, to keep stack traces and breakpoints at the
+ * right place. All other defs are built on their first call.
+ */
+final class TinyIncremental {
+
+    // top-level defs of the latest parse per source name, guarded by this
+    private final Map<String, Map<String, Def>> sources = new HashMap<>();
+
+    private record Def(TinyFunction function, LazyBody body, int hash) {
+    }
+
+    /**
+     * Starts the parse of a new version of a source. The session may be used by
+     * any number of parser runs, e.g. to materialize source sections. Later runs
+     * declare the functions of the first run, so only the first run sets them up
+     * and replaces the defs of the previous parse.
+     */
+    synchronized Session begin(Source source) {
+        Map<String, Def> previous = sources.get(source.getName());
+        return new Session(source.getName(), previous != null ? previous : Map.of());
+    }
+
+    private synchronized void commit(String sourceName, Map<String, Def> defs) {
+        sources.put(sourceName, defs);
+    }
+
+    final class Session {
+
+        private final String sourceName;
+        private final Map<String, Def> previous;
+        private final List<Def> defs = new ArrayList<>();
+        private boolean committed;
+
+        private Session(String sourceName, Map<String, Def> previous) {
+            this.sourceName = sourceName;
+            this.previous = previous;
+        }
+
+        void add(TinyFunction function, LazyBody body) {
+            CharSequence text = body.source().getCharacters();
+            int hash = 0;
+            for (int i = body.startIndex(); i < body.startIndex() + body.length(); i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            defs.add(new Def(function, body, hash));
+        }
+
+        /**
+         * Sets the previous root or the lazy body of every def of the run.
+         */
+        void finish() {
+            if (committed) {
+                defs.clear();
+                return;
+            }
+            Map<String, Def> current = new HashMap<>();
+            Set<String> duplicates = new HashSet<>();
+            for (Def def : defs) {
+                if (current.put(def.function.name, def) != null) {
+                    duplicates.add(def.function.name);
+                }
+            }
+            Map<String, Def> reused = new HashMap<>();
+            for (Def def : current.values()) {
+                Def old = previous.get(def.function.name);
+                if (old != null && !duplicates.contains(def.function.name) && old.function.getBuiltRoot() != null && old.function.callees != null
+                                && (samePosition(old, def) || canMoveSections(old)) && sameText(old, def)) {
+                    reused.put(def.function.name, old);
+                }
+            }
+            // a root can only be reused with the functions it calls
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Def old : new ArrayList<>(reused.values())) {
+                    if (!reused.keySet().containsAll(old.function.callees)) {
+                        reused.remove(old.function.name);
+                        changed = true;
+                    }
+                }
+            }
+            for (Def def : defs) {
+                Def old = reused.get(def.function.name);
+                if (old != null) {
+                    TinyRootNode root = old.function.getBuiltRoot();
+                    LazyBody built = root.function.builtBody;
+                    if (built != null) {
+                        root.function.moveBody(new LazyBody(built.language(), def.body.source(), built.scope(), def.body.startIndex(), def.body.length()));
+                    }
+                    def.function.callees = old.function.callees;
+                    def.function.root = root;
+                } else {
+                    def.function.lazyBody = def.body;
+                }
+            }
+            committed = true;
+            commit(sourceName, current);
+            defs.clear();
+        }
+
+        private static boolean samePosition(Def a, Def b) {
+            int start = a.body.startIndex();
+            if (start != b.body.startIndex()) {
+                return false;
+            }
+            Source sourceA = a.body.source();
+            Source sourceB = b.body.source();
+            return sourceA.getLineNumber(start) == sourceB.getLineNumber(start) && sourceA.getColumnNumber(start) == sourceB.getColumnNumber(start);
+        }
+
+        /*
+         * The sections of a root built from a skipped def can be moved until they are
+         * materialized.
+         */
+        private static boolean canMoveSections(Def old) {
+            TinyRootNode root = old.function.getBuiltRoot();
+            return root.function.builtBody != null && root.getBytecodeNode().getSourceInformation() == null;
+        }
+
+        private static boolean sameText(Def a, Def b) {
+            if (a.hash != b.hash || a.body.length() != b.body.length()) {
+                return false;
+            }
+            CharSequence textA = a.body.source().getCharacters();
+            CharSequence textB = b.body.source().getCharacters();
+            for (int i = 0; i < a.body.length(); i++) {
+                if (textA.charAt(a.body.startIndex() + i) != textB.charAt(b.body.startIndex() + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
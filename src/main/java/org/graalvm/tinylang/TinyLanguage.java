@@ -1,48 +1,179 @@
 package org.graalvm.tinylang;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Supplier;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+import org.graalvm.options.OptionValues;
+import org.graalvm.tinylang.TinyEvents.BuildEvent;
+import org.graalvm.tinylang.TinyEvents.CallEvent;
+import org.graalvm.tinylang.TinyEvents.ParseEvent;
+import org.graalvm.tinylang.TinyFunction.LazyBody;
+import org.graalvm.tinylang.TinyFunction.TailCallException;
 
 import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.Option;
 import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.TruffleLanguage.ContextPolicy;
 import com.oracle.truffle.api.TruffleLanguage.Env;
 import com.oracle.truffle.api.bytecode.BytecodeConfig;
 import com.oracle.truffle.api.bytecode.BytecodeLocal;
+import com.oracle.truffle.api.bytecode.BytecodeNode;
+import com.oracle.truffle.api.bytecode.BytecodeParser;
 import com.oracle.truffle.api.bytecode.BytecodeRootNode;
 import com.oracle.truffle.api.bytecode.BytecodeRootNodes;
 import com.oracle.truffle.api.bytecode.ConstantOperand;
 import com.oracle.truffle.api.bytecode.GenerateBytecode;
+import com.oracle.truffle.api.bytecode.LocalAccessor;
 import com.oracle.truffle.api.bytecode.Operation;
 import com.oracle.truffle.api.bytecode.Variadic;
 import com.oracle.truffle.api.debug.DebuggerTags.AlwaysHalt;
 import com.oracle.truffle.api.dsl.Bind;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Cached.Shared;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.GenerateInline;
 import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.dsl.TypeSystemReference;
 import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.ProvidedTags;
 import com.oracle.truffle.api.instrumentation.StandardTags.RootBodyTag;
 import com.oracle.truffle.api.instrumentation.StandardTags.RootTag;
 import com.oracle.truffle.api.instrumentation.StandardTags.StatementTag;
+import com.oracle.truffle.api.library.CachedLibrary;
+import com.oracle.truffle.api.nodes.BytecodeOSRNode;
+import com.oracle.truffle.api.nodes.DirectCallNode;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.nodes.UnexpectedResultException;
+import com.oracle.truffle.api.object.DynamicObjectLibrary;
+import com.oracle.truffle.api.object.Shape;
 import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.strings.TruffleString;
 
-@TruffleLanguage.Registration(id = "tiny")
+/*
+ * Parsing does not depend on the context, so a single language instance is shared by all
+ * contexts of an engine. The engine then caches the parsed call target per source.
+ */
+@TruffleLanguage.Registration(id = "tiny", contextPolicy = ContextPolicy.SHARED)
 @ProvidedTags({ RootTag.class, RootBodyTag.class, StatementTag.class, AlwaysHalt.class })
 public final class TinyLanguage extends TruffleLanguage<Env> {
 
+    @Option(help = "Directory for cached tiny bytecode (.tinyc) files. Caching is disabled if empty.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<String> BytecodeCache = new OptionKey<>("");
+
+    @Option(help = "Emit JDK Flight Recorder events for parsing and bytecode building.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> Events = new OptionKey<>(false);
+
+    @Option(help = "Emit a JDK Flight Recorder event for every Nth call if events are enabled. Disabled if 0.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Integer> CallEventSampling = new OptionKey<>(0);
+
+    @Option(help = "Parse def bodies on the first call of the function. Sources are not cached with --tiny.BytecodeCache in this mode.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> LazyParsing = new OptionKey<>(false);
+
+    @Option(help = "Reuse the bytecode of top-level defs that did not change since the previous parse of a source with the same name. Other defs are built on their first call. Sources are not cached with --tiny.BytecodeCache in this mode.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> Incremental = new OptionKey<>(false);
+
+    @Option(help = "Suspend top-level loops after running for this many milliseconds. The program then returns a value with a resume member that continues it. Disabled if 0.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Integer> TimeSlice = new OptionKey<>(0);
+
+    @Option(help = "Build with source sections and statement tags instead of materializing them on demand. Used to measure their overhead.", category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> EagerTags = new OptionKey<>(false);
+
+    @Option(help = "Print the bytecode of every parsed source.", category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> DumpBytecode = new OptionKey<>(false);
+
+    /*
+     * Strings are TruffleStrings in UTF-16, which stores strings that fit into
+     * Latin-1 with one byte per character.
+     */
+    static final TruffleString.Encoding ENCODING = TruffleString.Encoding.UTF_16;
+
+    private static final BytecodeConfig EAGER_TAGS_CONFIG = TinyRootNodeGen.newConfigBuilder().addSource().addTag(StatementTag.class).build();
+
+    private static final ContextReference<Env> CONTEXT_REFERENCE = ContextReference.create(TinyLanguage.class);
+    private static final LanguageReference<TinyLanguage> LANGUAGE_REFERENCE = LanguageReference.create(TinyLanguage.class);
+
+    /*
+     * Options are equal for all contexts of a language instance, see
+     * areOptionsCompatible.
+     */
+    @CompilationFinal boolean eventsEnabled;
+    @CompilationFinal int callEventSampling;
+    @CompilationFinal boolean lazyParsing;
+    @CompilationFinal long timeSliceNanos;
+    @CompilationFinal boolean incrementalParsing;
+
+    // defs of the previous parse per source name with --tiny.Incremental
+    final TinyIncremental incremental = new TinyIncremental();
+
+    // shape of new records, shared by all contexts
+    final Shape recordShape = TinyRecord.createRootShape();
+    @CompilationFinal BytecodeConfig bytecodeConfig = BytecodeConfig.DEFAULT;
+
     @Override
     protected CallTarget parse(ParsingRequest request) throws Exception {
-        TinyRootNode parsedRoot = parse(this, request.getSource()).getNode(0);
-        System.out.println(parsedRoot.dump());
+        Source source = request.getSource();
+        Env env = CONTEXT_REFERENCE.get(null);
+        String cacheDirectory = env.getOptions().get(BytecodeCache);
+        BuildEvent event = TinyEvents.beginBuild(eventsEnabled);
+        BytecodeRootNodes<TinyRootNode> nodes;
+        if (cacheDirectory.isEmpty() || lazyParsing || incrementalParsing || timeSliceNanos != 0) {
+            nodes = parse(this, source);
+        } else {
+            nodes = TinyBytecodeCache.parse(this, source, env.getPublicTruffleFile(cacheDirectory));
+        }
+        TinyEvents.commitBuild(event, source, nodes);
+        TinyRootNode parsedRoot = nodes.getNode(0);
+        if (env.getOptions().get(DumpBytecode)) {
+            PrintStream out = new PrintStream(env.out(), true);
+            out.println(parsedRoot.dump());
+        }
+        if (timeSliceNanos != 0) {
+            return new TinySuspension.ProgramRootNode(this, parsedRoot).getCallTarget();
+        }
         return parsedRoot.getCallTarget();
     }
 
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new TinyLanguageOptionDescriptors();
+    }
+
+    @Override
+    protected boolean areOptionsCompatible(OptionValues firstOptions, OptionValues newOptions) {
+        return firstOptions.get(BytecodeCache).equals(newOptions.get(BytecodeCache)) //
+                        && firstOptions.get(Events).equals(newOptions.get(Events)) //
+                        && firstOptions.get(CallEventSampling).equals(newOptions.get(CallEventSampling)) //
+                        && firstOptions.get(LazyParsing).equals(newOptions.get(LazyParsing)) //
+                        && firstOptions.get(Incremental).equals(newOptions.get(Incremental)) //
+                        && firstOptions.get(TimeSlice).equals(newOptions.get(TimeSlice)) //
+                        && firstOptions.get(EagerTags).equals(newOptions.get(EagerTags));
+    }
+
     @Override
     protected Env createContext(Env env) {
+        eventsEnabled = env.getOptions().get(Events);
+        callEventSampling = eventsEnabled ? env.getOptions().get(CallEventSampling) : 0;
+        lazyParsing = env.getOptions().get(LazyParsing);
+        incrementalParsing = env.getOptions().get(Incremental);
+        timeSliceNanos = env.getOptions().get(TimeSlice) * 1_000_000L;
+        bytecodeConfig = env.getOptions().get(EagerTags) ? EAGER_TAGS_CONFIG : BytecodeConfig.DEFAULT;
         return env;
     }
 
+    static TinyLanguage get(Node node) {
+        return LANGUAGE_REFERENCE.get(node);
+    }
+
     @Override
     protected boolean patchContext(Env context, Env newEnv) {
         return true;
@@ -51,160 +182,130 @@ public final class TinyLanguage extends TruffleLanguage<Env> {
     static final class Scope {
 
         final Map<String, BytecodeLocal> locals = new HashMap<>();
-        final Map<String, TinyRootNode> functions = new HashMap<>();
+        final Map<String, TinyFunction> functions = new HashMap<>();
+        // functions called before their def, by name
+        final Map<String, TinyFunction> unresolved = new HashMap<>();
 
         final Scope parent;
         final String name;
+        final TinyFunction function;
 
-        Scope(String name, Scope parent) {
+        Scope(String name, TinyFunction function, Scope parent) {
             this.name = name;
+            this.function = function;
             this.parent = parent;
         }
 
     }
 
+    /**
+     * Builds the roots of a source, with the default config unless
+     * <code>--tiny.EagerTags</code> is set. The parser always emits source sections
+     * and statement tags, but the builder drops them unless the config requests
+     * them. Instruments, the debugger and stack traces request
+     * them on demand, which re-runs the parser for all roots of the source.
+     */
     public static BytecodeRootNodes<TinyRootNode> parse(TinyLanguage language, Source source) {
-        return TinyRootNodeGen.create(language, BytecodeConfig.DEFAULT, (TinyRootNodeGen.Builder b) -> {
+        return TinyRootNodeGen.create(language, language.bytecodeConfig, createParser(language, source));
+    }
+
+    /**
+     * Creates the parser that emits the bytecode for a source. The parser may run
+     * more than once, e.g. to serialize the bytecode or to materialize source
+     * information, and must therefore emit the same roots and refer to the same
+     * functions every time.
+     */
+    static BytecodeParser<TinyRootNodeGen.Builder> createParser(TinyLanguage language, Source source) {
+        TinyIncremental.Session session = language.incrementalParsing ? language.incremental.begin(source) : null;
+        List<TinyFunction> functions = new ArrayList<>();
+        return (TinyRootNodeGen.Builder b) -> {
             b.beginSource(source);
             b.beginSourceSection(0, source.getLength());
             b.beginRoot();
-            SExpression.walk(source.getCharacters().toString(), new SExpression.Visitor() {
-                private Scope scope = new Scope("root", null);
-
-                @Override
-                public void onOpen(String operator, Supplier<String> identifiers) {
-                    b.beginSourceSection();
-                    b.beginTag(StatementTag.class);
-                    switch (operator) {
-                    case "add":
-                        b.beginAdd();
-                        break;
-                    case "lt":
-                        b.beginLessThan();
-                        break;
-                    case "while":
-                        b.beginWhile();
-                        break;
-                    case "block":
-                        b.beginBlock();
-                        break;
-                    case "set":
-                        BytecodeLocal local = scope.locals.computeIfAbsent(identifiers.get(),
-                                (localName) -> b.createLocal(localName, null));
-                        b.beginStoreLocal(local);
-                        break;
-                    case "def":
-                        String functionName = identifiers.get();
-                        this.scope = new Scope(functionName, this.scope);
-                        b.beginBlock();
-                        b.beginRoot();
-                        String argument;
-                        int index = 0;
-                        while ((argument = identifiers.get()) != null) {
-                            BytecodeLocal argumentLocal = scope.locals.computeIfAbsent(argument,
-                                    (localName) -> b.createLocal(localName, null));
-                            b.beginStoreLocal(argumentLocal);
-                            b.emitLoadArgument(index++);
-                            b.endStoreLocal();
-                        }
-                        break;
-                    case "call":
-                        String targetName = identifiers.get();
-                        TinyRootNode target = scope.functions.get(targetName);
-                        if (target == null) {
-                            error("Invalid function " + targetName);
-                        }
-                        b.beginDirectCall(target);
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
-                    }
-                }
-
-                @Override
-                public void onClose(String operator, int startIndex, int length) {
-                    switch (operator) {
-                    case "add":
-                        b.endAdd();
-                        break;
-                    case "lt":
-                        b.endLessThan();
-                        break;
-                    case "while":
-                        b.endWhile();
-                        break;
-                    case "block":
-                        b.endBlock();
-                        break;
-                    case "set":
-                        b.endStoreLocal();
-                        break;
-                    case "def":
-                        TinyRootNode root = b.endRoot();
-                        root.name = scope.name;
-                        scope = scope.parent;
-                        scope.functions.put(root.name, root);
-                        b.endBlock();
-                        break;
-                    case "call":
-                        b.endDirectCall();
-                        break;
-                    }
-                    b.endTag(StatementTag.class);
-                    b.endSourceSection(startIndex, length);
-                }
-
-                @Override
-                public void onIdentifier(String value) {
-                    BytecodeLocal local = scope.locals.get(value);
-                    if (local == null) {
-                        throw error("Unknown local " + value);
-                    }
-                    b.emitLoadLocal(local);
-                }
-
-                @Override
-                public void onInteger(int value) {
-                    b.emitLoadConstant(value);
-                }
-
-                @Override
-                public void onDouble(double value) {
-                    b.emitLoadConstant(value);
-                }
-
-                @Override
-                public void onString(String value) {
-                    b.emitLoadConstant(value);
-                }
-
-            });
+            BytecodeLocal timeSliceLocal = null;
+            if (language.timeSliceNanos != 0) {
+                timeSliceLocal = b.createLocal();
+                b.beginStoreLocal(timeSliceLocal);
+                b.emitLoadConstant(0L);
+                b.endStoreLocal();
+            }
+            CharSequence text = source.getCharacters();
+            SExpression.Symbols symbols = new SExpression.Symbols();
+            ParseEvent event = TinyEvents.beginParse(language.eventsEnabled);
+            TinyParser parser = new TinyParser(language, b, source, symbols, new Scope("root", null, null),
+                            language.lazyParsing || session != null, null, timeSliceLocal, session, functions);
+            SExpression.walk(text, symbols, parser);
+            parser.finish();
+            TinyEvents.commitParse(event, source, symbols.size());
 
             b.endRoot().name = "program";
             b.endSourceSection();
             b.endSource();
+        };
+    }
+
+    /**
+     * Builds the root of a function that was skipped in lazy mode from its
+     * <code>builtBody</code>. Reruns read the body again, so source sections
+     * materialized later point to where the def is now.
+     */
+    static BytecodeRootNodes<TinyRootNode> parse(TinyFunction function) {
+        LazyBody first = function.builtBody;
+        TinyLanguage language = first.language();
+        BuildEvent event = TinyEvents.beginBuild(language.eventsEnabled);
+        List<TinyFunction> functions = new ArrayList<>();
+        BytecodeRootNodes<TinyRootNode> nodes = TinyRootNodeGen.create(language, language.bytecodeConfig, (TinyRootNodeGen.Builder b) -> {
+            LazyBody body = function.builtBody;
+            Source source = body.source();
+            b.beginSource(source);
+            SExpression.Symbols symbols = new SExpression.Symbols();
+            ParseEvent parseEvent = TinyEvents.beginParse(language.eventsEnabled);
+            TinyParser parser = new TinyParser(language, b, source, symbols, body.scope(), language.lazyParsing, function, null, null, functions);
+            SExpression.walk(source.getCharacters(), body.startIndex(), body.startIndex() + body.length(), symbols, parser);
+            parser.finish();
+            TinyEvents.commitParse(parseEvent, source, symbols.size());
+            b.endSource();
         });
+        TinyEvents.commitBuild(event, first.source(), nodes);
+        return nodes;
     }
 
     static RuntimeException error(String message) {
         throw new IllegalStateException(message);
     }
 
+    /*
+     * Implementing BytecodeOSRNode lets the generated interpreter poll for on-stack
+     * replacement at While back-edges, so loops of roots that are called only once
+     * still get compiled. Yield is used to suspend top-level loops with
+     * --tiny.TimeSlice.
+     */
     @GenerateBytecode(languageClass = TinyLanguage.class, enableBlockScoping = false, boxingEliminationTypes = {
-            int.class }, enableTagInstrumentation = true)
-    public static abstract class TinyRootNode extends RootNode implements BytecodeRootNode {
+            int.class, long.class, double.class }, enableTagInstrumentation = true, enableSerialization = true, enableYield = true)
+    @TypeSystemReference(TinyTypes.class)
+    public static abstract class TinyRootNode extends RootNode implements BytecodeRootNode, BytecodeOSRNode {
 
         protected TinyRootNode(TinyLanguage language, FrameDescriptor frameDescriptor) {
             super(language, frameDescriptor);
         }
 
         String name;
+        TinyFunction function;
 
+        /**
+         * Adds two values. Only the <code>int</code> case is specialized here so the
+         * operation can be quickened; everything else is handled by {@link AddNode}.
+         */
         @Operation
         static final class Add {
-            @Specialization
+            @Specialization(rewriteOn = ArithmeticException.class)
             static int doInt(int a, int b) {
-                return a + b;
+                return Math.addExact(a, b);
+            }
+
+            @Specialization(replaces = "doInt")
+            static Object doGeneric(Object a, Object b, @Cached AddNode add) {
+                return add.execute(a, b);
             }
         }
 
@@ -214,15 +315,470 @@ public final class TinyLanguage extends TruffleLanguage<Env> {
             static boolean doInt(int a, int b) {
                 return a < b;
             }
+
+            @Specialization
+            static boolean doLong(long a, long b) {
+                return a < b;
+            }
+
+            @Specialization
+            static boolean doBigInteger(TinyBigInteger a, TinyBigInteger b) {
+                return a.compareTo(b) < 0;
+            }
+
+            @Specialization
+            static boolean doDouble(double a, double b) {
+                return a < b;
+            }
+
+            @Specialization
+            static boolean doBigIntegerDouble(TinyBigInteger a, double b) {
+                return a.doubleValue() < b;
+            }
+
+            @Specialization
+            static boolean doDoubleBigInteger(double a, TinyBigInteger b) {
+                return a < b.doubleValue();
+            }
+
+            @Fallback
+            static boolean doInvalid(Object a, Object b, @Bind Node location) {
+                throw TinyException.create("Cannot compare ", a, b, location);
+            }
+        }
+
+        /**
+         * Compares numbers by value and strings by content. Other values are equal
+         * if they are identical.
+         */
+        @Operation
+        static final class Equals {
+            @Specialization
+            static boolean doInt(int a, int b) {
+                return a == b;
+            }
+
+            @Specialization
+            static boolean doLong(long a, long b) {
+                return a == b;
+            }
+
+            @Specialization
+            static boolean doBigInteger(TinyBigInteger a, TinyBigInteger b) {
+                return a.compareTo(b) == 0;
+            }
+
+            @Specialization
+            static boolean doDouble(double a, double b) {
+                return a == b;
+            }
+
+            /*
+             * EqualNode already compares cached hash codes and lengths before the
+             * contents, so a separate hash check would hash strings that have none yet.
+             */
+            @Specialization
+            static boolean doString(TruffleString a, TruffleString b, @Cached TruffleString.EqualNode equal) {
+                return equal.execute(a, b, ENCODING);
+            }
+
+            @Fallback
+            static boolean doOther(Object a, Object b) {
+                return a == b;
+            }
+        }
+
+        /**
+         * Number of characters of a string or elements of an array.
+         */
+        @Operation
+        static final class Length {
+            @Specialization
+            static int doString(TruffleString value, @Cached TruffleString.CodePointLengthNode length) {
+                return length.execute(value, ENCODING);
+            }
+
+            @Specialization
+            static int doArray(TinyArray value) {
+                return value.length;
+            }
+
+            @Fallback
+            static int doOther(Object value, @Bind Node location) {
+                throw TinyException.create("No length: ", value, location);
+            }
+        }
+
+        /**
+         * <code>(new-array length)</code>, see {@link TinyArray}.
+         */
+        @Operation
+        static final class NewArray {
+            @Specialization
+            static TinyArray doInt(int length, @Bind Node location) {
+                if (length < 0) {
+                    throw TinyException.create("Negative array length: ", length, location);
+                }
+                return new TinyArray(length);
+            }
+
+            @Fallback
+            static Object doOther(Object length, @Bind Node location) {
+                throw TinyException.create("Invalid array length: ", length, location);
+            }
         }
 
+        /**
+         * <code>(get array index)</code>. Reads of numeric storage return the
+         * primitive value.
+         */
         @Operation
-        @ConstantOperand(name = "target", type = TinyRootNode.class)
+        static final class ArrayGet {
+            @Specialization(guards = "array.isInt()")
+            static int doInt(TinyArray array, int index, @Bind Node location) {
+                return ((int[]) array.storage)[checkIndex(array, index, location)];
+            }
+
+            @Specialization(guards = "array.isLong()")
+            static long doLong(TinyArray array, int index, @Bind Node location) {
+                return ((long[]) array.storage)[checkIndex(array, index, location)];
+            }
+
+            @Specialization(guards = "array.isDouble()")
+            static double doDouble(TinyArray array, int index, @Bind Node location) {
+                return ((double[]) array.storage)[checkIndex(array, index, location)];
+            }
+
+            @Specialization(guards = "array.isObject()")
+            static Object doObject(TinyArray array, int index, @Bind Node location) {
+                return ((Object[]) array.storage)[checkIndex(array, index, location)];
+            }
+
+            @Fallback
+            static Object doInvalid(Object array, @SuppressWarnings("unused") Object index, @Bind Node location) {
+                throw TinyException.create("Invalid array access: ", array, location);
+            }
+
+            static int checkIndex(TinyArray array, int index, Node location) {
+                if (Integer.compareUnsigned(index, array.length) >= 0) {
+                    throw TinyException.create("Index out of bounds: ", index, location);
+                }
+                return index;
+            }
+        }
+
+        /**
+         * <code>(put array index value)</code>, returns the value. Values that do not
+         * fit into the storage widen it once, see {@link TinyArray}.
+         */
+        @Operation
+        static final class ArrayPut {
+            @Specialization(guards = "array.isInt()")
+            static int doInt(TinyArray array, int index, int value, @Bind Node location) {
+                ((int[]) array.storage)[ArrayGet.checkIndex(array, index, location)] = value;
+                return value;
+            }
+
+            @Specialization(guards = "array.isLong()")
+            static long doLong(TinyArray array, int index, long value, @Bind Node location) {
+                ((long[]) array.storage)[ArrayGet.checkIndex(array, index, location)] = value;
+                return value;
+            }
+
+            @Specialization(guards = "array.isDouble()")
+            static double doDouble(TinyArray array, int index, double value, @Bind Node location) {
+                ((double[]) array.storage)[ArrayGet.checkIndex(array, index, location)] = value;
+                return value;
+            }
+
+            @Specialization(guards = "array.isObject()")
+            static Object doObject(TinyArray array, int index, Object value, @Bind Node location) {
+                ((Object[]) array.storage)[ArrayGet.checkIndex(array, index, location)] = value;
+                return value;
+            }
+
+            @Fallback
+            static Object doGeneralize(Object array, Object index, Object value, @Bind Node location) {
+                if (array instanceof TinyArray a && index instanceof Integer i) {
+                    a.generalizeAndWrite(ArrayGet.checkIndex(a, i, location), value);
+                    return value;
+                }
+                throw TinyException.create("Invalid array access: ", array, location);
+            }
+        }
+
+        /**
+         * <code>(record)</code>, see {@link TinyRecord}.
+         */
+        @Operation
+        static final class NewRecord {
+            @Specialization
+            static TinyRecord doDefault(@Bind Node location) {
+                return new TinyRecord(TinyLanguage.get(location).recordShape);
+            }
+        }
+
+        /**
+         * <code>(field name record)</code>. The library caches up to
+         * {@link #CACHE_LIMIT} shapes per site.
+         */
+        @Operation
+        @ConstantOperand(name = "name", type = String.class)
+        static final class GetField {
+
+            static final int CACHE_LIMIT = 3;
+
+            @Specialization(limit = "CACHE_LIMIT")
+            static Object doRecord(String name, TinyRecord record, @CachedLibrary("record") DynamicObjectLibrary objects, @Bind Node location) {
+                Object value = objects.getOrDefault(record, name, null);
+                if (value == null) {
+                    throw TinyException.create("Unknown field: ", name, location);
+                }
+                return value;
+            }
+
+            @Fallback
+            static Object doNotARecord(@SuppressWarnings("unused") String name, Object value, @Bind Node location) {
+                throw TinyException.create("Not a record: ", value, location);
+            }
+        }
+
+        /**
+         * <code>(set-field name record value)</code>, returns the value. Adding a
+         * field moves the record to the next shape, which is cached like a field
+         * access.
+         */
+        @Operation
+        @ConstantOperand(name = "name", type = String.class)
+        static final class SetField {
+            @Specialization(limit = "GetField.CACHE_LIMIT")
+            static Object doRecord(String name, TinyRecord record, Object value, @CachedLibrary("record") DynamicObjectLibrary objects) {
+                objects.put(record, name, value);
+                return value;
+            }
+
+            @Fallback
+            static Object doNotARecord(@SuppressWarnings("unused") String name, Object record, @SuppressWarnings("unused") Object value, @Bind Node location) {
+                throw TinyException.create("Not a record: ", record, location);
+            }
+        }
+
+        /**
+         * Fused <code>(set local (add local increment))</code>.
+         */
+        @Operation
+        @ConstantOperand(name = "local", type = LocalAccessor.class)
+        @ConstantOperand(name = "increment", type = int.class)
+        static final class IncrementLocal {
+            @Specialization(rewriteOn = { UnexpectedResultException.class, ArithmeticException.class })
+            static void doInt(VirtualFrame frame, LocalAccessor local, int increment, @Bind BytecodeNode bytecode) throws UnexpectedResultException {
+                local.setInt(bytecode, frame, Math.addExact(local.getInt(bytecode, frame), increment));
+            }
+
+            @Specialization(replaces = "doInt")
+            static void doGeneric(VirtualFrame frame, LocalAccessor local, int increment, @Bind BytecodeNode bytecode, @Cached AddNode add) {
+                local.setObject(bytecode, frame, add.execute(local.getObject(bytecode, frame), increment));
+            }
+        }
+
+        /**
+         * Fused <code>(set local (add local operand))</code>.
+         */
+        @Operation
+        @ConstantOperand(name = "local", type = LocalAccessor.class)
+        @ConstantOperand(name = "operand", type = LocalAccessor.class)
+        static final class AddLocal {
+            @Specialization(rewriteOn = { UnexpectedResultException.class, ArithmeticException.class })
+            static void doInt(VirtualFrame frame, LocalAccessor local, LocalAccessor operand, @Bind BytecodeNode bytecode) throws UnexpectedResultException {
+                local.setInt(bytecode, frame, Math.addExact(local.getInt(bytecode, frame), operand.getInt(bytecode, frame)));
+            }
+
+            @Specialization(replaces = "doInt")
+            static void doGeneric(VirtualFrame frame, LocalAccessor local, LocalAccessor operand, @Bind BytecodeNode bytecode, @Cached AddNode add) {
+                local.setObject(bytecode, frame, add.execute(local.getObject(bytecode, frame), operand.getObject(bytecode, frame)));
+            }
+        }
+
+        /**
+         * Returns <code>true</code> once every <code>sliceNanos</code>. The end of the
+         * current slice is kept in the <code>deadline</code> local, which is 0 until
+         * the first check and after an expired slice, so the time spent suspended does
+         * not count.
+         */
+        @Operation
+        @ConstantOperand(name = "deadline", type = LocalAccessor.class)
+        @ConstantOperand(name = "sliceNanos", type = long.class)
+        static final class TimeSliceExpired {
+            @Specialization(rewriteOn = UnexpectedResultException.class)
+            static boolean doLong(VirtualFrame frame, LocalAccessor deadline, long sliceNanos, @Bind BytecodeNode bytecode) throws UnexpectedResultException {
+                return expired(frame, deadline, sliceNanos, bytecode, deadline.getLong(bytecode, frame));
+            }
+
+            @Specialization(replaces = "doLong")
+            static boolean doGeneric(VirtualFrame frame, LocalAccessor deadline, long sliceNanos, @Bind BytecodeNode bytecode) {
+                return expired(frame, deadline, sliceNanos, bytecode, (long) deadline.getObject(bytecode, frame));
+            }
+
+            private static boolean expired(VirtualFrame frame, LocalAccessor deadline, long sliceNanos, BytecodeNode bytecode, long end) {
+                long now = System.nanoTime();
+                if (end == 0) {
+                    deadline.setLong(bytecode, frame, now + sliceNanos);
+                    return false;
+                } else if (now - end < 0) {
+                    return false;
+                }
+                deadline.setLong(bytecode, frame, 0L);
+                return true;
+            }
+        }
+
+        /**
+         * Add semantics shared by {@link Add}, {@link IncrementLocal} and
+         * {@link AddLocal}.
+         */
+        @GenerateInline(false)
+        @TypeSystemReference(TinyTypes.class)
+        abstract static class AddNode extends Node {
+
+            abstract Object execute(Object a, Object b);
+
+            @Specialization(rewriteOn = ArithmeticException.class)
+            static int doInt(int a, int b) {
+                return Math.addExact(a, b);
+            }
+
+            @Specialization(rewriteOn = ArithmeticException.class)
+            static long doLong(long a, long b) {
+                return Math.addExact(a, b);
+            }
+
+            @Specialization
+            static TinyBigInteger doBigInteger(TinyBigInteger a, TinyBigInteger b) {
+                return a.add(b);
+            }
+
+            @Specialization
+            static double doDouble(double a, double b) {
+                return a + b;
+            }
+
+            @Specialization
+            static double doBigIntegerDouble(TinyBigInteger a, double b) {
+                return a.doubleValue() + b;
+            }
+
+            @Specialization
+            static double doDoubleBigInteger(double a, TinyBigInteger b) {
+                return a + b.doubleValue();
+            }
+
+            /*
+             * Lazy concatenation only builds a rope, which is flattened once when the
+             * string is read. Concatenation in loops is linear in the result length.
+             */
+            @Specialization
+            static TruffleString doString(TruffleString a, TruffleString b, @Shared @Cached TruffleString.ConcatNode concat) {
+                return concat.execute(a, b, ENCODING, true);
+            }
+
+            @Specialization
+            static TruffleString doStringLong(TruffleString a, long b, @Shared @Cached TruffleString.ConcatNode concat,
+                            @Shared @Cached TruffleString.FromLongNode fromLong) {
+                return concat.execute(a, fromLong.execute(b, ENCODING, true), ENCODING, true);
+            }
+
+            @Specialization
+            static TruffleString doLongString(long a, TruffleString b, @Shared @Cached TruffleString.ConcatNode concat,
+                            @Shared @Cached TruffleString.FromLongNode fromLong) {
+                return concat.execute(fromLong.execute(a, ENCODING, true), b, ENCODING, true);
+            }
+
+            @Fallback
+            Object doInvalid(Object a, Object b) {
+                throw TinyException.create("Cannot add ", a, b, this);
+            }
+        }
+
+        @Operation
+        @ConstantOperand(name = "target", type = TinyFunction.class)
         static final class DirectCall {
 
             @Specialization
-            static Object doDirect(TinyRootNode target, @Variadic Object[] args, @Bind Node location) {
-                return target.getCallTarget().call(location, args);
+            static Object doDirect(TinyFunction target, @Variadic Object[] args, @Bind Node location) {
+                int sampling = TinyLanguage.get(location).callEventSampling;
+                if (sampling == 0) {
+                    return target.call(location, args);
+                }
+                CallEvent event = TinyEvents.beginCall(sampling);
+                try {
+                    return target.call(location, args);
+                } finally {
+                    if (event != null) {
+                        TinyEvents.commitCall(event, target);
+                    }
+                }
+            }
+
+        }
+
+        /**
+         * Call in tail position. Unwinds the current frame and lets the caller invoke
+         * the target, so tail recursion runs in constant stack space.
+         */
+        @Operation
+        @ConstantOperand(name = "target", type = TinyFunction.class)
+        static final class TailCall {
+
+            @Specialization
+            static Object doTail(TinyFunction target, @Variadic Object[] args) {
+                throw new TailCallException(target, args);
+            }
+
+        }
+
+        /**
+         * Call of a function value. Caches up to {@link #CACHE_LIMIT} functions per
+         * call site as direct calls that the compiler can inline.
+         */
+        @Operation
+        static final class IndirectCall {
+
+            static final int CACHE_LIMIT = 3;
+
+            @Specialization(guards = "function == cachedFunction", limit = "CACHE_LIMIT")
+            static Object doCached(@SuppressWarnings("unused") TinyFunction function, @Variadic Object[] args,
+                            @Cached("function") TinyFunction cachedFunction,
+                            @Cached("create(cachedFunction.getCallTarget())") DirectCallNode callNode) {
+                try {
+                    return callNode.call(args);
+                } catch (TailCallException tailCall) {
+                    return tailCall.dispatch(callNode);
+                }
+            }
+
+            @Specialization(replaces = "doCached")
+            static Object doMegamorphic(TinyFunction function, @Variadic Object[] args, @Bind Node location) {
+                return function.call(location, args);
+            }
+
+            @Fallback
+            static Object doNotAFunction(Object value, @SuppressWarnings("unused") @Variadic Object[] args, @Bind Node location) {
+                throw TinyException.create("Not a function: ", value, location);
+            }
+
+        }
+
+        @Operation
+        static final class IndirectTailCall {
+
+            @Specialization
+            static Object doTail(TinyFunction function, @Variadic Object[] args) {
+                throw new TailCallException(function, args);
+            }
+
+            @Fallback
+            static Object doNotAFunction(Object value, @SuppressWarnings("unused") @Variadic Object[] args, @Bind Node location) {
+                throw TinyException.create("Not a function: ", value, location);
             }
 
         }
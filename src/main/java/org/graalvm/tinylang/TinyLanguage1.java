@@ -18,14 +18,13 @@ import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.Source;
 
 //Language supporting test/program1.tiny
-//@TruffleLanguage.Registration(id = "tiny")
+@TruffleLanguage.Registration(id = "tiny1")
 //@ProvidedTags({ RootTag.class, RootBodyTag.class, StatementTag.class, AlwaysHalt.class })
 public final class TinyLanguage1 extends TruffleLanguage<Env> {
 
     @Override
     protected CallTarget parse(ParsingRequest request) throws Exception {
         TinyRootNode1 parsedRoot = parse(this, request.getSource()).getNode(0);
-        System.out.println(parsedRoot.dump());
         return parsedRoot.getCallTarget();
     }
 
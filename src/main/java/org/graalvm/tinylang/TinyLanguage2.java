@@ -19,14 +19,13 @@ import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.Source;
 
 // Language supporting test/program2.tiny
-//@TruffleLanguage.Registration(id = "tiny")
+@TruffleLanguage.Registration(id = "tiny2")
 //@ProvidedTags({ RootTag.class, RootBodyTag.class, StatementTag.class, AlwaysHalt.class })
 public final class TinyLanguage2 extends TruffleLanguage<Env> {
 
     @Override
     protected CallTarget parse(ParsingRequest request) throws Exception {
         TinyRootNode2 parsedRoot = parse(this, request.getSource()).getNode(0);
-        System.out.println(parsedRoot.dump());
         return parsedRoot.getCallTarget();
     }
 
@@ -27,14 +27,13 @@ import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.Source;
 
-@TruffleLanguage.Registration(id = "tiny")
+@TruffleLanguage.Registration(id = "tiny3")
 @ProvidedTags({ RootTag.class, RootBodyTag.class, StatementTag.class, AlwaysHalt.class })
 public final class TinyLanguage3 extends TruffleLanguage<Env> {
 
     @Override
     protected CallTarget parse(ParsingRequest request) throws Exception {
         TinyRootNode3 parsedRoot = parse(this, request.getSource()).getNode(0);
-        System.out.println(parsedRoot.dump());
         return parsedRoot.getCallTarget();
     }
 
@@ -63,8 +62,15 @@ public final class TinyLanguage3 extends TruffleLanguage<Env> {
 
     }
 
+    /**
+     * Source sections and statement tags are only recorded by the default config.
+     * They are materialized by re-running the parser once a tool or a stack trace
+     * requests them.
+     */
     public static BytecodeRootNodes<TinyRootNode3> parse(TinyLanguage3 language, Source source) {
         return TinyRootNode3Gen.create(language, BytecodeConfig.DEFAULT, (b) -> {
+            b.beginSource(source);
+            b.beginSourceSection(0, source.getLength());
             b.beginRoot();
 
             SExpression.walk(source.getCharacters().toString(), new SExpression.Visitor() {
@@ -72,6 +78,8 @@ public final class TinyLanguage3 extends TruffleLanguage<Env> {
 
                 @Override
                 public void onOpen(String operator, Supplier<String> identifiers) {
+                    b.beginSourceSection();
+                    b.beginTag(StatementTag.class);
                     switch (operator) {
                     case "add":
                         b.beginAdd();
@@ -93,6 +101,7 @@ public final class TinyLanguage3 extends TruffleLanguage<Env> {
                     case "def":
                         String functionName = identifiers.get();
                         this.scope = new Scope(functionName, this.scope);
+                        b.beginBlock();
                         b.beginRoot();
                         String argument;
                         int index = 0;
@@ -138,11 +147,14 @@ public final class TinyLanguage3 extends TruffleLanguage<Env> {
                         root.name = scope.name;
                         scope = scope.parent;
                         scope.functions.put(root.name, root);
+                        b.endBlock();
                         break;
                     case "call":
                         b.endDirectCall();
                         break;
                     }
+                    b.endTag(StatementTag.class);
+                    b.endSourceSection(startIndex, length);
                 }
 
                 @Override
@@ -172,6 +184,8 @@ public final class TinyLanguage3 extends TruffleLanguage<Env> {
             });
 
             b.endRoot().name = "program";
+            b.endSourceSection();
+            b.endSource();
         });
     }
 
@@ -2,21 +2,34 @@ package org.graalvm.tinylang;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.graalvm.launcher.AbstractLanguageLauncher;
 import org.graalvm.options.OptionCategory;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Context.Builder;
+import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.tinylang.TinyEvents.EvalEvent;
 
 public final class TinyLauncher extends AbstractLanguageLauncher {
 
     private List<String> files = new ArrayList<>();
     private String[] programArgs;
+    private boolean mapSources;
+    private boolean events;
+    private int parallel;
+    // filled with the remaining options by the launcher before launch
+    private Map<String, String> polyglotOptions;
 
 
     @Override
@@ -31,23 +44,85 @@ public final class TinyLauncher extends AbstractLanguageLauncher {
         b.arguments(getLanguageId(), programArgs);
         b.allowExperimentalOptions(true);
         b.useSystemExit(true);
-        Context c = b.build();
-        
+        if (parallel > 0) {
+            launchParallel(loadSources());
+            return;
+        }
+        // closed at the end so instruments see the context close
+        try (Context c = b.build()) {
+            for (Source source : loadSources()) {
+                EvalEvent event = TinyEvents.beginEval(events);
+                Value result = c.eval(source);
+                TinyEvents.commitEval(event, source);
+                System.out.println(result);
+            }
+        }
+    }
+
+    /**
+     * Evaluates every file in its own context on <code>parallel</code> threads. The
+     * contexts share one engine, so sources are parsed and compiled once. Results
+     * and errors are printed in the order of the files.
+     */
+    private void launchParallel(List<Source> sources) {
+        try (Engine engine = Engine.newBuilder(getLanguageId()).allowExperimentalOptions(true).options(polyglotOptions).build()) {
+            ExecutorService executor = Executors.newFixedThreadPool(parallel);
+            List<Future<String>> results = new ArrayList<>();
+            for (Source source : sources) {
+                results.add(executor.submit(() -> evalIsolated(engine, source)));
+            }
+            int failures = 0;
+            try {
+                for (int i = 0; i < sources.size(); i++) {
+                    try {
+                        System.out.println(results.get(i).get());
+                    } catch (ExecutionException e) {
+                        failures++;
+                        System.err.println(sources.get(i).getName() + ": " + e.getCause().getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw abort(e);
+            } finally {
+                executor.shutdownNow();
+            }
+            if (failures > 0) {
+                throw abort(failures + " of " + sources.size() + " files failed.", 1);
+            }
+        }
+    }
+
+    private String evalIsolated(Engine engine, Source source) {
+        try (Context c = Context.newBuilder(getLanguageId()).engine(engine).allowAllAccess(true).arguments(getLanguageId(), programArgs).build()) {
+            EvalEvent event = TinyEvents.beginEval(events);
+            Value result = c.eval(source);
+            TinyEvents.commitEval(event, source);
+            // the value is only valid until the context is closed
+            return result.toString();
+        }
+    }
+
+    private List<Source> loadSources() {
         List<Source> sources = new ArrayList<>();
+        // sources stored in an engine cache must not refer to a mapped file
+        boolean map = mapSources && !polyglotOptions.containsKey("engine.CacheStore");
         for (String file : files) {
             try {
-                sources.add(Source.newBuilder(getLanguageId(), new File(file)).build());
+                Source.Builder sourceBuilder = Source.newBuilder(getLanguageId(), new File(file));
+                if (map) {
+                    // hand the mapped file through instead of reading it into a String
+                    sourceBuilder.content(SExpression.map(Path.of(file)));
+                }
+                sources.add(sourceBuilder.build());
             } catch (IOException e) {
                 throw abort(e);
             }
         }
-        
-        for (Source source : sources) {
-            System.out.println(c.eval(source));
-        }
+        return sources;
     }
     
     protected List<String> preprocessArguments(List<String> arguments, Map<String, String> polyglotOptions) {
+        this.polyglotOptions = polyglotOptions;
         List<String> unrecognizedOptions = new ArrayList<>();
         ListIterator<String> iterator = arguments.listIterator();
         while (iterator.hasNext()) {
@@ -57,9 +132,19 @@ public final class TinyLauncher extends AbstractLanguageLauncher {
                     break;
                 }
 
-                parseOption(iterator, arg);
+                Option option = parseOption(iterator, arg);
 
                 // support launcher specific options
+                if (option.flag().equals("mmap")) {
+                    mapSources = true;
+                    continue;
+                } else if (option.flag().equals("parallel")) {
+                    parallel = option.value() == null ? Runtime.getRuntime().availableProcessors() : parseThreads(option.value());
+                    continue;
+                } else if (option.flag().equals("tiny.Events")) {
+                    // language option, but also enables the eval events of the launcher
+                    events = option.value() == null || Boolean.parseBoolean(option.value());
+                }
                 
                 unrecognizedOptions.add(arg);
             } else {
@@ -71,6 +156,19 @@ public final class TinyLauncher extends AbstractLanguageLauncher {
         return unrecognizedOptions;
     }
     
+    private int parseThreads(String value) {
+        int threads;
+        try {
+            threads = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (threads <= 0) {
+            throw abort("Invalid value '" + value + "' for --parallel. Usage: --parallel[=<threads>] with a positive number of threads.");
+        }
+        return threads;
+    }
+
     record Option(String flag, String value) {
     }
     
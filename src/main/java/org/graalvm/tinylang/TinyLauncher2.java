@@ -1,21 +1,45 @@
 package org.graalvm.tinylang;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 
 import org.graalvm.aotjs.api.JS;
 import org.graalvm.aotjs.api.JSBoolean;
 import org.graalvm.aotjs.api.JSObject;
 import org.graalvm.aotjs.api.JSString;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
 public final class TinyLauncher2 {
 
     public static final JSObject COMPILE_BUTTON = getElementById("compile");
+    public static final JSObject CANCEL_BUTTON = getElementById("cancel");
     public static final JSObject INPUT = getElementById("source");
     public static final JSObject OUTPUT = getElementById("output");
 
+    private static final DomOutputStream OUTPUT_STREAM = new DomOutputStream();
+
+    /*
+     * The engine lives as long as the page. Tiny parses in the engine, so a
+     * source that is equal to the previous one is not parsed again. The previous
+     * source is kept alive to keep it in the engine's source cache. Edited
+     * sources keep the name, so defs that did not change are not built again.
+     */
+    private static Engine engine;
+    private static Source lastSource;
+
+    /*
+     * Top-level loops are suspended after this many milliseconds and resumed from
+     * setTimeout, so the page can repaint and handle events in between.
+     */
+    private static final int TIME_SLICE_MILLIS = 20;
+    private static boolean cancelRequested;
+
     public static void main(String[] args) {
         try {
             // TODO GR-62854 Here to ensure handleEvent and run is generated. Remove once
@@ -28,6 +52,7 @@ public final class TinyLauncher2 {
         }
 
         addEventListener(COMPILE_BUTTON, "click", _ -> runCallback());
+        addEventListener(CANCEL_BUTTON, "click", _ -> cancelRequested = true);
         addEventListener(INPUT, "keydown", e -> {
             if (e.get("ctrlKey") instanceof JSBoolean b && b.asBoolean() && e.get("key") instanceof JSString jsString
                     && "Enter".equals(jsString.asString())) {
@@ -40,36 +65,173 @@ public final class TinyLauncher2 {
 
     private static void runCallback() {
         setDisabled(true);
-        runAsync(() -> {
-            try {
-                run();
-            } finally {
-                setDisabled(false);
-            }
-        });
+        runAsync(TinyLauncher2::run);
     }
-    
 
+    /**
+     * Starts a run. The run continues in later <code>setTimeout</code> callbacks
+     * while the program is suspended, and enables the page again when it is done.
+     */
     public static void run() {
         resetOutput();
-        String source = getSource();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cancelRequested = false;
+        String text = getSource();
+        Context c = null;
         try {
             long time = System.nanoTime();
-            try (Context c = Context.newBuilder("tiny").option("engine.WarnInterpreterOnly", "false").out(out).err(out).logHandler(out).build()) {
-                Value result = c.eval("tiny", source);
-                appendOutput(String.format("Eval finished in %.2fms", ((System.nanoTime() - time) / (double)1000000)));
-                appendOutput("Result: " + result.toString());
+            boolean unchanged = lastSource != null && text.contentEquals(lastSource.getCharacters());
+            if (!unchanged) {
+                lastSource = Source.newBuilder("tiny", text, "playground.tiny").buildLiteral();
             }
-            out.flush();
-            appendOutput(new String(out.toByteArray()));
+            c = Context.newBuilder("tiny").engine(getEngine()).build();
+            c.initialize("tiny");
+            long evalTime = System.nanoTime();
+            Value result = c.eval(lastSource);
+            String setup = String.format("Setup %.2fms, ", millis(evalTime - time));
+            step(c, result, evalTime, 1, setup + (unchanged ? "%s (source unchanged, parse reused)" : "%s"));
         } catch (Throwable t) {
+            finish(c, t);
+        }
+    }
+
+    private static void step(Context c, Value result, long evalTime, int slices, String report) {
+        if (!result.canInvokeMember("resume")) {
+            String eval = String.format("eval finished in %.2fms, %d time slices", millis(System.nanoTime() - evalTime), slices);
+            appendOutput(String.format(report, eval));
+            appendOutput("Result: " + result.toString());
+            finish(c, null);
+        } else if (cancelRequested) {
+            appendOutput(String.format("Cancelled after %.2fms, %d time slices.", millis(System.nanoTime() - evalTime), slices));
+            finish(c, null);
+        } else {
+            // show the output of the slice before yielding to the browser
+            OUTPUT_STREAM.flush();
+            runAsync(() -> {
+                try {
+                    step(c, result.invokeMember("resume"), evalTime, slices + 1, report);
+                } catch (Throwable t) {
+                    finish(c, t);
+                }
+            });
+        }
+    }
+
+    private static void finish(Context c, Throwable t) {
+        if (t != null) {
             ByteArrayOutputStream errorOut = new ByteArrayOutputStream();
             t.printStackTrace(new PrintStream(errorOut));
             appendOutput(new String(errorOut.toByteArray()));
         }
+        if (c != null) {
+            c.close();
+        }
+        setDisabled(false);
     }
 
+    private static Engine getEngine() {
+        if (engine == null) {
+            engine = Engine.newBuilder("tiny").option("engine.WarnInterpreterOnly", "false") //
+                    .allowExperimentalOptions(true).option("tiny.TimeSlice", String.valueOf(TIME_SLICE_MILLIS)) //
+                    .option("tiny.Incremental", "true") //
+                    .out(OUTPUT_STREAM).err(OUTPUT_STREAM).logHandler(OUTPUT_STREAM).build();
+        }
+        return engine;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) 1000000;
+    }
+
+    /**
+     * Streams guest output to <code>#output</code>. Bytes are collected into
+     * batches that are appended as text nodes, so printing does not copy the
+     * existing output. Only the last {@link #SCROLLBACK} characters are kept.
+     */
+    static final class DomOutputStream extends OutputStream {
+
+        static final int BATCH = 8192;
+        static final int SCROLLBACK = 200_000;
+
+        private final byte[] buffer = new byte[BATCH];
+        private int count;
+        // lengths of the text nodes in #output, oldest first
+        private final ArrayDeque<Integer> nodes = new ArrayDeque<>();
+        private int length;
+
+        @Override
+        public void write(int b) {
+            if (count == buffer.length) {
+                flushBatch();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) {
+                write(b[off + i]);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (count > 0) {
+                String text = new String(buffer, 0, count, StandardCharsets.UTF_8);
+                count = 0;
+                appendText(text);
+            }
+        }
+
+        /*
+         * Writes the complete characters of a full buffer and keeps the bytes of a
+         * character that continues in the next write.
+         */
+        private void flushBatch() {
+            int end = count;
+            int start = end - 1;
+            while (start > 0 && (buffer[start] & 0xC0) == 0x80) {
+                start--;
+            }
+            if ((buffer[start] & 0xC0) == 0xC0 && start + sequenceLength(buffer[start]) > end) {
+                end = start;
+            }
+            appendText(new String(buffer, 0, end, StandardCharsets.UTF_8));
+            System.arraycopy(buffer, end, buffer, 0, count - end);
+            count -= end;
+        }
+
+        private static int sequenceLength(byte lead) {
+            if ((lead & 0xE0) == 0xC0) {
+                return 2;
+            } else if ((lead & 0xF0) == 0xE0) {
+                return 3;
+            }
+            return 4;
+        }
+
+        void append(String text) {
+            flush();
+            appendText(text);
+        }
+
+        private void appendText(String text) {
+            String visible = text.length() > SCROLLBACK ? text.substring(text.length() - SCROLLBACK) : text;
+            appendChild(OUTPUT, createTextNode(visible));
+            nodes.addLast(visible.length());
+            length += visible.length();
+            while (length > SCROLLBACK) {
+                removeFirstChild(OUTPUT);
+                length -= nodes.removeFirst();
+            }
+        }
+
+        void reset() {
+            count = 0;
+            nodes.clear();
+            length = 0;
+            OUTPUT.set("innerHTML", "");
+        }
+    }
 
     @JS("")
     private static native void sink(Object o);
@@ -121,23 +283,26 @@ public final class TinyLauncher2 {
     @JS("parent.appendChild(child);")
     public static native void appendChild(JSObject parent, JSObject child);
 
+    @JS.Coerce
+    @JS("parent.removeChild(parent.firstChild);")
+    public static native void removeFirstChild(JSObject parent);
+
     public static String getSource() {
         return ((JSString) INPUT.get("innerText")).asString();
     }
 
     public static void resetOutput() {
-        setDisabled(false);
-        OUTPUT.set("innerHTML", "");
-        OUTPUT.set("innerHTML", "");
+        OUTPUT_STREAM.reset();
     }
 
     public static void appendOutput(String val) {
-        OUTPUT.set("innerHTML", ((JSString) OUTPUT.get("innerHTML")).asString() + val + '\n');
+        OUTPUT_STREAM.append(val + '\n');
     }
 
     private static void setDisabled(boolean state) {
         setAttribute(INPUT, "contenteditable", JSBoolean.of(!state));
         COMPILE_BUTTON.set("disabled", JSBoolean.of(state));
+        CANCEL_BUTTON.set("disabled", JSBoolean.of(!state));
     }
 
     @FunctionalInterface
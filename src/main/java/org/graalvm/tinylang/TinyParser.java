@@ -0,0 +1,607 @@
+package org.graalvm.tinylang;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.graalvm.tinylang.TinyFunction.LazyBody;
+import org.graalvm.tinylang.TinyLanguage.Scope;
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.bytecode.BytecodeLocal;
+import com.oracle.truffle.api.instrumentation.StandardTags.StatementTag;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.api.strings.TruffleString;
+
+/**
+ * Emits the bytecode for the forms visited by
+ * {@link SExpression#walk(CharSequence, SExpression.Symbols, SExpression.SymbolVisitor)}.
+ */
+final class TinyParser implements SExpression.SymbolVisitor {
+
+    private final TinyRootNodeGen.Builder b;
+    private final CharSequence text;
+    private final SExpression.Symbols symbols;
+    private final Source source;
+    private final TinyLanguage language;
+    private Scope scope;
+
+    /*
+     * In lazy mode def bodies are skipped and only their source range is recorded.
+     */
+    private final boolean lazy;
+    private final TinyFunction materialized;
+    private TinyFunction skipped;
+
+    /*
+     * Set if skipped defs are compared with the previous parse of the source.
+     */
+    private final TinyIncremental.Session incremental;
+
+    /*
+     * Top-level functions referenced by the materialized def, null once a nested
+     * def was skipped.
+     */
+    private Set<String> callees = new HashSet<>();
+
+    /*
+     * Holds the end of the current time slice if top-level loops yield, see
+     * TinyRootNode.TimeSliceExpired.
+     */
+    private final BytecodeLocal timeSliceLocal;
+
+    /*
+     * Functions in the order of their creation, shared by all runs of the same
+     * parse. A rerun, e.g. to materialize source sections, declares the same
+     * functions in the same order and gets the objects of the first run, which
+     * the other roots and the built bodies already refer to.
+     */
+    private final List<TinyFunction> functions;
+    private final boolean rerun;
+    private int functionCount;
+
+    // opcodes of the open forms, with the kind of call for calls
+    private static final int TAIL_CALL = -2;
+    private static final int INDIRECT_CALL = -3;
+    private static final int INDIRECT_TAIL_CALL = -4;
+    private static final int LAZY_DEF = -5;
+    private static final int SLICED_CONDITION = -6;
+    private int[] forms = new int[16];
+    // number of operands started per open form
+    private int[] operands = new int[16];
+    private int formDepth;
+
+    /*
+     * (set x (add x 1)) and (set x (add x y)) are emitted as fused
+     * IncrementLocal and AddLocal operations. A set is held back until the
+     * shape is complete; any other input flushes the pending operations.
+     */
+    private static final int NONE = 0;
+    private static final int SET = 1;
+    private static final int ADD = 2;
+    private static final int ADD_LOCAL = 3;
+    private static final int ADD_CONSTANT = 4;
+    private static final int ADD_OPERAND = 5;
+    private static final int ADD_CLOSED = 6;
+
+    private int pending = NONE;
+    private BytecodeLocal pendingLocal;
+    private BytecodeLocal pendingOperand;
+    private int pendingConstant;
+    private int pendingAddStart;
+    private int pendingAddLength;
+
+    /**
+     * Creates a parser for the forms of a source. If <code>materialized</code> is
+     * set, the source range is expected to contain its def, which is built as the
+     * first root. If <code>timeSliceLocal</code> is set, top-level loops yield when
+     * the time slice expired. <code>functions</code> must be the same list for all
+     * runs of a parse.
+     */
+    TinyParser(TinyLanguage language, TinyRootNodeGen.Builder b, Source source, SExpression.Symbols symbols, Scope scope, boolean lazy,
+                    TinyFunction materialized, BytecodeLocal timeSliceLocal, TinyIncremental.Session incremental, List<TinyFunction> functions) {
+        this.language = language;
+        this.b = b;
+        this.source = source;
+        this.text = source.getCharacters();
+        this.symbols = symbols;
+        this.scope = scope;
+        this.lazy = lazy;
+        this.materialized = materialized;
+        this.timeSliceLocal = timeSliceLocal;
+        this.incremental = incremental;
+        this.functions = functions;
+        this.rerun = !functions.isEmpty();
+    }
+
+    private void flush() {
+        int state = pending;
+        pending = NONE;
+        if (state >= SET) {
+            b.beginSourceSection();
+            b.beginTag(StatementTag.class);
+            b.beginStoreLocal(pendingLocal);
+        }
+        if (state >= ADD) {
+            b.beginSourceSection();
+            b.beginTag(StatementTag.class);
+            b.beginAdd();
+        }
+        if (state >= ADD_LOCAL) {
+            b.emitLoadLocal(pendingLocal);
+        }
+        if (state == ADD_CONSTANT || (state == ADD_CLOSED && pendingOperand == null)) {
+            b.emitLoadConstant(pendingConstant);
+        } else if (state >= ADD_OPERAND) {
+            b.emitLoadLocal(pendingOperand);
+        }
+        if (state == ADD_CLOSED) {
+            b.endAdd();
+            b.endTag(StatementTag.class);
+            b.endSourceSection(pendingAddStart, pendingAddLength);
+        }
+    }
+
+    @Override
+    public void onOpen(int opcode, int operator, SExpression.Identifiers identifiers) {
+        if (formDepth == forms.length) {
+            forms = Arrays.copyOf(forms, formDepth * 2);
+            operands = Arrays.copyOf(operands, formDepth * 2);
+        }
+        startOperand();
+        operands[formDepth] = 0;
+        forms[formDepth++] = opcode;
+        if (pending == SET && opcode == SExpression.OP_ADD) {
+            pending = ADD;
+            return;
+        } else if (pending != NONE) {
+            flush();
+        }
+        if (opcode == SExpression.OP_DEF && materialized != null && formDepth == 1) {
+            // the function was declared by the parse that skipped it
+            identifiers.next();
+            scope = new Scope(materialized.name, materialized, scope);
+            b.beginSourceSection();
+            b.beginRoot();
+            storeArguments(identifiers);
+            return;
+        } else if (opcode == SExpression.OP_DEF && lazy) {
+            forms[formDepth - 1] = LAZY_DEF;
+            callees = null;
+            skipped = declareFunction(symbols.name(nextSymbol(operator, identifiers)));
+            identifiers.skipRest();
+            return;
+        } else if (opcode == SExpression.OP_SET) {
+            pendingLocal = getOrCreateLocal(nextSymbol(operator, identifiers));
+            pending = SET;
+            return;
+        }
+        b.beginSourceSection();
+        b.beginTag(StatementTag.class);
+        switch (opcode) {
+        case SExpression.OP_ADD:
+            b.beginAdd();
+            break;
+        case SExpression.OP_LT:
+            b.beginLessThan();
+            break;
+        case SExpression.OP_EQ:
+            b.beginEquals();
+            break;
+        case SExpression.OP_LEN:
+            b.beginLength();
+            break;
+        case SExpression.OP_NEW_ARRAY:
+            b.beginNewArray();
+            break;
+        case SExpression.OP_GET:
+            b.beginArrayGet();
+            break;
+        case SExpression.OP_PUT:
+            b.beginArrayPut();
+            break;
+        case SExpression.OP_RECORD:
+            b.emitNewRecord();
+            break;
+        case SExpression.OP_FIELD:
+            b.beginGetField(symbols.name(nextSymbol(operator, identifiers)));
+            break;
+        case SExpression.OP_SET_FIELD:
+            b.beginSetField(symbols.name(nextSymbol(operator, identifiers)));
+            break;
+        case SExpression.OP_WHILE:
+            b.beginWhile();
+            if (timeSliceLocal != null && scope.function == null) {
+                // checked before the condition, i.e. at every back-edge
+                forms[formDepth - 1] = SLICED_CONDITION;
+                b.beginBlock();
+                b.beginIfThen();
+                b.emitTimeSliceExpired(timeSliceLocal, language.timeSliceNanos);
+                b.beginYield();
+                b.emitLoadNull();
+                b.endYield();
+                b.endIfThen();
+            }
+            break;
+        case SExpression.OP_BLOCK:
+            b.beginBlock();
+            break;
+        case SExpression.OP_IF:
+            b.beginConditional();
+            break;
+        case SExpression.OP_DEF:
+            String functionName = symbols.name(nextSymbol(operator, identifiers));
+            // declared before the body is parsed to allow recursive calls
+            TinyFunction function = declareFunction(functionName);
+            this.scope = new Scope(functionName, function, this.scope);
+            b.beginBlock();
+            b.beginRoot();
+            storeArguments(identifiers);
+            break;
+        case SExpression.OP_CALL:
+            String targetName = symbols.name(nextSymbol(operator, identifiers));
+            BytecodeLocal targetLocal = scope.locals.get(targetName);
+            boolean tail = isTailPosition(identifiers);
+            if (targetLocal != null) {
+                // the local holds a function value
+                if (tail) {
+                    forms[formDepth - 1] = INDIRECT_TAIL_CALL;
+                    b.beginIndirectTailCall();
+                } else {
+                    forms[formDepth - 1] = INDIRECT_CALL;
+                    b.beginIndirectCall();
+                }
+                b.emitLoadLocal(targetLocal);
+            } else if (tail) {
+                forms[formDepth - 1] = TAIL_CALL;
+                b.beginTailCall(lookupFunction(targetName));
+            } else {
+                b.beginDirectCall(lookupFunction(targetName));
+            }
+            break;
+        default:
+            SourceSection section = source.createSection(identifiers.operatorStart(), 0);
+            throw TinyException.create("Unknown operator " + symbols.name(operator) + " at " + source.getName() + ":" + section.getStartLine() + ":"
+                            + section.getStartColumn(), null);
+        }
+    }
+
+    /*
+     * Reads the identifier that must follow the operator, e.g. the name of a def.
+     */
+    private int nextSymbol(int operator, SExpression.Identifiers identifiers) {
+        int symbol = identifiers.next();
+        if (symbol == SExpression.NO_SYMBOL) {
+            throw TinyLanguage.error("Expected identifier after " + symbols.name(operator));
+        }
+        return symbol;
+    }
+
+    private TinyFunction declareFunction(String name) {
+        TinyFunction function = scope.unresolved.remove(name);
+        if (function == null) {
+            function = createFunction(name);
+        }
+        scope.functions.put(name, function);
+        return function;
+    }
+
+    private TinyFunction createFunction(String name) {
+        int index = functionCount++;
+        if (index < functions.size()) {
+            return functions.get(index);
+        }
+        TinyFunction function = new TinyFunction(name, index);
+        functions.add(function);
+        return function;
+    }
+
+    private void storeArguments(SExpression.Identifiers identifiers) {
+        int argument;
+        int index = 0;
+        while ((argument = identifiers.next()) != SExpression.NO_SYMBOL) {
+            b.beginStoreLocal(getOrCreateLocal(argument));
+            b.emitLoadArgument(index++);
+            b.endStoreLocal();
+        }
+    }
+
+    private TinyFunction findFunction(String name) {
+        for (Scope s = scope; s != null; s = s.parent) {
+            TinyFunction function = s.functions.get(name);
+            if (function != null) {
+                if (materialized != null && s.function == null && callees != null) {
+                    callees.add(name);
+                }
+                return function;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the function for a name, or a function that is declared by a later
+     * def of the current scope or of an enclosing scope.
+     */
+    private TinyFunction lookupFunction(String name) {
+        TinyFunction function = findFunction(name);
+        if (function == null) {
+            function = scope.unresolved.get(name);
+        }
+        if (function == null) {
+            function = createFunction(name);
+            scope.unresolved.put(name, function);
+        }
+        return function;
+    }
+
+    /*
+     * Functions that are still unresolved when a def ends may be declared later
+     * in the enclosing scope. If the enclosing scope already has an unresolved
+     * function of that name, both will be the same def and the function of the
+     * closed scope forwards to it.
+     */
+    private void closeScope() {
+        Scope closed = scope;
+        scope = scope.parent;
+        for (Map.Entry<String, TinyFunction> entry : closed.unresolved.entrySet()) {
+            TinyFunction other = scope.unresolved.putIfAbsent(entry.getKey(), entry.getValue());
+            if (other != null) {
+                entry.getValue().forward = other;
+            }
+        }
+    }
+
+    private static void checkResolved(Scope s) {
+        if (!s.unresolved.isEmpty()) {
+            throw TinyLanguage.error("Unknown local or function " + s.unresolved.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * A call is in tail position if it is the last element of a def body, of a
+     * block in tail position or an arm of an if in tail position.
+     */
+    private boolean isTailPosition(SExpression.Identifiers identifiers) {
+        long anyElement = 0;
+        for (int i = formDepth - 2; i >= 0; i--) {
+            int level = formDepth - 2 - i;
+            if (forms[i] == SExpression.OP_DEF) {
+                return identifiers.isLastOf(level + 1, anyElement);
+            } else if (forms[i] == SExpression.OP_IF) {
+                if (operands[i] < 2) {
+                    // the condition
+                    return false;
+                }
+                if (level < Long.SIZE) {
+                    anyElement |= 1L << level;
+                }
+            } else if (forms[i] != SExpression.OP_BLOCK) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void startOperand() {
+        if (formDepth > 0) {
+            operands[formDepth - 1]++;
+        }
+    }
+
+    /**
+     * Fails if a called function was never declared. In lazy mode this is only
+     * detected when the body with the call is built.
+     */
+    void finish() {
+        checkResolved(scope);
+        if (materialized != null) {
+            materialized.callees = callees;
+        }
+        if (incremental != null) {
+            incremental.finish();
+        }
+    }
+
+    private BytecodeLocal getOrCreateLocal(int symbol) {
+        String localName = symbols.name(symbol);
+        BytecodeLocal local = scope.locals.get(localName);
+        if (local == null) {
+            local = b.createLocal(localName, null);
+            scope.locals.put(localName, local);
+        }
+        return local;
+    }
+
+    @Override
+    public void onClose(int opcode, int operator, int startIndex, int length) {
+        int form = forms[--formDepth];
+        if (opcode == SExpression.OP_ADD && (pending == ADD_CONSTANT || pending == ADD_OPERAND)) {
+            pendingAddStart = startIndex;
+            pendingAddLength = length;
+            pending = ADD_CLOSED;
+            return;
+        } else if (opcode == SExpression.OP_SET && pending == ADD_CLOSED) {
+            pending = NONE;
+            b.beginSourceSection();
+            b.beginTag(StatementTag.class);
+            if (pendingOperand == null) {
+                b.emitIncrementLocal(pendingLocal, pendingConstant);
+            } else {
+                b.emitAddLocal(pendingLocal, pendingOperand);
+            }
+            b.endTag(StatementTag.class);
+            b.endSourceSection(startIndex, length);
+            operandDone();
+            return;
+        } else if (pending != NONE) {
+            flush();
+        }
+        if (form == LAZY_DEF) {
+            LazyBody body = new LazyBody(language, source, scope, startIndex, length);
+            if (incremental != null) {
+                incremental.add(skipped, body);
+            } else if (!rerun) {
+                skipped.lazyBody = body;
+            } else {
+                // the enclosing def may have moved since the first run
+                skipped.moveBody(body);
+            }
+            skipped = null;
+            return;
+        } else if (opcode == SExpression.OP_DEF && materialized != null && formDepth == 0) {
+            TinyRootNode root = b.endRoot();
+            root.name = scope.name;
+            root.function = materialized;
+            // the enclosing scopes were complete when the def was skipped
+            checkResolved(scope);
+            scope = scope.parent;
+            b.endSourceSection(startIndex, length);
+            return;
+        }
+        switch (opcode) {
+        case SExpression.OP_ADD:
+            b.endAdd();
+            break;
+        case SExpression.OP_LT:
+            b.endLessThan();
+            break;
+        case SExpression.OP_EQ:
+            b.endEquals();
+            break;
+        case SExpression.OP_LEN:
+            b.endLength();
+            break;
+        case SExpression.OP_NEW_ARRAY:
+            b.endNewArray();
+            break;
+        case SExpression.OP_GET:
+            b.endArrayGet();
+            break;
+        case SExpression.OP_PUT:
+            b.endArrayPut();
+            break;
+        case SExpression.OP_RECORD:
+            // emitted by onOpen
+            break;
+        case SExpression.OP_FIELD:
+            b.endGetField();
+            break;
+        case SExpression.OP_SET_FIELD:
+            b.endSetField();
+            break;
+        case SExpression.OP_WHILE:
+            b.endWhile();
+            break;
+        case SExpression.OP_BLOCK:
+            b.endBlock();
+            break;
+        case SExpression.OP_IF:
+            b.endConditional();
+            break;
+        case SExpression.OP_SET:
+            b.endStoreLocal();
+            break;
+        case SExpression.OP_DEF:
+            TinyRootNode root = b.endRoot();
+            root.name = scope.name;
+            root.function = scope.function;
+            scope.function.root = root;
+            closeScope();
+            b.endBlock();
+            break;
+        case SExpression.OP_CALL:
+            switch (form) {
+            case TAIL_CALL:
+                b.endTailCall();
+                break;
+            case INDIRECT_CALL:
+                b.endIndirectCall();
+                break;
+            case INDIRECT_TAIL_CALL:
+                b.endIndirectTailCall();
+                break;
+            default:
+                b.endDirectCall();
+                break;
+            }
+            break;
+        }
+        b.endTag(StatementTag.class);
+        b.endSourceSection(startIndex, length);
+        operandDone();
+    }
+
+    /*
+     * Called when an operand of the innermost open form was emitted completely.
+     * Closes the block around the condition of a sliced while.
+     */
+    private void operandDone() {
+        if (formDepth > 0 && forms[formDepth - 1] == SLICED_CONDITION) {
+            forms[formDepth - 1] = SExpression.OP_WHILE;
+            b.endBlock();
+        }
+    }
+
+    @Override
+    public void onIdentifier(int symbol) {
+        startOperand();
+        BytecodeLocal local = scope.locals.get(symbols.name(symbol));
+        if (pending == ADD && local == pendingLocal) {
+            pending = ADD_LOCAL;
+            return;
+        } else if (pending == ADD_LOCAL && local != null) {
+            pendingOperand = local;
+            pending = ADD_OPERAND;
+            return;
+        } else if (pending != NONE) {
+            flush();
+        }
+        if (local == null) {
+            // functions are values too, also functions of later defs like in calls
+            b.emitLoadConstant(lookupFunction(symbols.name(symbol)));
+        } else {
+            b.emitLoadLocal(local);
+        }
+        operandDone();
+    }
+
+    @Override
+    public void onInteger(int value) {
+        startOperand();
+        if (pending == ADD_LOCAL) {
+            pendingOperand = null;
+            pendingConstant = value;
+            pending = ADD_CONSTANT;
+            return;
+        } else if (pending != NONE) {
+            flush();
+        }
+        b.emitLoadConstant(value);
+        operandDone();
+    }
+
+    @Override
+    public void onDouble(double value) {
+        startOperand();
+        if (pending != NONE) {
+            flush();
+        }
+        b.emitLoadConstant(value);
+        operandDone();
+    }
+
+    @Override
+    public void onString(int startIndex, int length) {
+        startOperand();
+        if (pending != NONE) {
+            flush();
+        }
+        b.emitLoadConstant(TruffleString.fromJavaStringUncached(text.subSequence(startIndex, startIndex + length).toString(), TinyLanguage.ENCODING));
+        operandDone();
+    }
+
+}
@@ -0,0 +1,281 @@
+package org.graalvm.tinylang;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.ThreadLocalAction;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleContext;
+import com.oracle.truffle.api.TruffleLogger;
+import com.oracle.truffle.api.bytecode.BytecodeLocation;
+import com.oracle.truffle.api.frame.FrameInstance;
+import com.oracle.truffle.api.instrumentation.ContextsListener;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+import com.oracle.truffle.api.nodes.LanguageInfo;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Sampling profiler for tiny programs. A system thread submits a thread local
+ * action to all threads of all contexts every interval, which records the stack
+ * of {@link TinyRootNode} frames at the next safepoint. Nothing is instrumented,
+ * so the overhead only depends on the sampling interval.
+ * <p>
+ * Enable with <code>--tiny-profiler</code>. When a context is closed the samples
+ * of the engine are written as collapsed stacks, one
+ * <code>frame;frame;frame count</code> line per stack, which flame graph tools
+ * read directly. Frames are named after the function and the line of the
+ * current location.
+ */
+@TruffleInstrument.Registration(id = TinyProfiler.ID, name = "Tiny Profiler")
+public final class TinyProfiler extends TruffleInstrument {
+
+    static final String ID = "tiny-profiler";
+
+    @Option(name = "", help = "Sample the stacks of tiny programs.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> Enabled = new OptionKey<>(false);
+
+    @Option(help = "Sampling interval in milliseconds.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Integer> Interval = new OptionKey<>(10);
+
+    @Option(help = "File the collapsed stacks are written to.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<String> Output = new OptionKey<>("tiny-profile.collapsed");
+
+    @Option(help = "Print the self and total time per function and per source section.", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> Summary = new OptionKey<>(false);
+
+    private static final TruffleLogger LOG = TruffleLogger.getLogger(ID, TinyProfiler.class);
+
+    private final List<TruffleContext> contexts = new CopyOnWriteArrayList<>();
+    // sample count per stack, guarded by this
+    private final Map<List<SampledFrame>, long[]> samples = new HashMap<>();
+
+    private Env env;
+    private int interval;
+    private volatile boolean disposed;
+
+    @Override
+    protected void onCreate(Env instrumentEnv) {
+        if (!instrumentEnv.getOptions().get(Enabled)) {
+            return;
+        }
+        this.env = instrumentEnv;
+        this.interval = Math.max(1, instrumentEnv.getOptions().get(Interval));
+        instrumentEnv.getInstrumenter().attachContextsListener(new ContextsListener() {
+
+            @Override
+            public void onContextCreated(TruffleContext context) {
+                contexts.add(context);
+            }
+
+            @Override
+            public void onLanguageContextCreated(TruffleContext context, LanguageInfo language) {
+            }
+
+            @Override
+            public void onLanguageContextInitialized(TruffleContext context, LanguageInfo language) {
+            }
+
+            @Override
+            public void onLanguageContextFinalized(TruffleContext context, LanguageInfo language) {
+            }
+
+            @Override
+            public void onLanguageContextDisposed(TruffleContext context, LanguageInfo language) {
+            }
+
+            @Override
+            public void onContextClosed(TruffleContext context) {
+                contexts.remove(context);
+                dump();
+            }
+        }, true);
+        Thread sampler = instrumentEnv.createSystemThread(this::sampleLoop);
+        sampler.setName("Tiny Profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    @Override
+    protected void onDispose(Env instrumentEnv) {
+        disposed = true;
+    }
+
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new TinyProfilerOptionDescriptors();
+    }
+
+    private void sampleLoop() {
+        SampleAction action = new SampleAction();
+        while (!disposed) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (TruffleContext context : contexts) {
+                try {
+                    env.submitThreadLocal(context, null, action);
+                } catch (IllegalStateException e) {
+                    // closed concurrently
+                }
+            }
+        }
+    }
+
+    private final class SampleAction extends ThreadLocalAction {
+
+        SampleAction() {
+            super(false, false);
+        }
+
+        @Override
+        protected void perform(Access access) {
+            record(collectStack());
+        }
+    }
+
+    /*
+     * Frames are recorded as bytecode indices, innermost first. Source sections
+     * are not materialized by default and must not be built at a safepoint, so
+     * they are resolved when the profile is written.
+     */
+    private record SampledFrame(TinyRootNode root, int bytecodeIndex) {
+    }
+
+    private static List<SampledFrame> collectStack() {
+        List<SampledFrame> frames = new ArrayList<>();
+        Truffle.getRuntime().iterateFrames((FrameInstance frameInstance) -> {
+            RootNode root = frameInstance.getCallTarget() instanceof RootCallTarget target ? target.getRootNode() : null;
+            if (root instanceof TinyRootNode tinyRoot) {
+                BytecodeLocation location = BytecodeLocation.get(frameInstance);
+                frames.add(new SampledFrame(tinyRoot, location != null ? location.getBytecodeIndex() : -1));
+            }
+            return null;
+        });
+        return frames.isEmpty() ? null : frames;
+    }
+
+    private synchronized void record(List<SampledFrame> stack) {
+        if (stack != null) {
+            samples.computeIfAbsent(stack, (s) -> new long[1])[0]++;
+        }
+    }
+
+    /*
+     * Collapsed stacks list the outermost frame first. Stacks that only differ in
+     * bytecode indices of the same line are merged.
+     */
+    private Map<String, long[]> collapseStacks() {
+        Set<TinyRootNode> roots = new HashSet<>();
+        for (List<SampledFrame> stack : samples.keySet()) {
+            for (SampledFrame frame : stack) {
+                if (roots.add(frame.root)) {
+                    frame.root.getRootNodes().ensureSourceInformation();
+                }
+            }
+        }
+        Map<String, long[]> stacks = new HashMap<>();
+        for (Map.Entry<List<SampledFrame>, long[]> entry : samples.entrySet()) {
+            List<SampledFrame> frames = entry.getKey();
+            StringBuilder stack = new StringBuilder();
+            for (int i = frames.size() - 1; i >= 0; i--) {
+                stack.append(frameName(frames.get(i)));
+                if (i > 0) {
+                    stack.append(';');
+                }
+            }
+            stacks.computeIfAbsent(stack.toString(), (s) -> new long[1])[0] += entry.getValue()[0];
+        }
+        return stacks;
+    }
+
+    private static String frameName(SampledFrame frame) {
+        TinyRootNode root = frame.root;
+        SourceSection section = frame.bytecodeIndex >= 0 ? root.getBytecodeNode().getSourceLocation(frame.bytecodeIndex) : null;
+        if (section == null) {
+            return root.getName();
+        }
+        return root.getName() + " (" + section.getSource().getName() + ":" + section.getStartLine() + ")";
+    }
+
+    private synchronized void dump() {
+        Map<String, long[]> stacks = collapseStacks();
+        Path output = Path.of(env.getOptions().get(Output));
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, long[]> entry : stacks.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue()[0] + "\n");
+            }
+        } catch (IOException e) {
+            LOG.warning("Could not write profile " + output + ": " + e);
+        }
+        if (env.getOptions().get(Summary)) {
+            printSummary(new PrintStream(env.err(), true), stacks);
+        }
+    }
+
+    /*
+     * Self time is attributed to the innermost frame of a sample, total time to
+     * every distinct frame of a sample. Functions are aggregated by name, sections
+     * by the full frame name.
+     */
+    private void printSummary(PrintStream out, Map<String, long[]> stacks) {
+        Map<String, long[]> functions = new HashMap<>();
+        Map<String, long[]> sections = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : stacks.entrySet()) {
+            long count = entry.getValue()[0];
+            String[] frames = entry.getKey().split(";");
+            Set<String> seenFunctions = new HashSet<>();
+            Set<String> seenSections = new HashSet<>();
+            for (int i = 0; i < frames.length; i++) {
+                String section = frames[i];
+                int paren = section.indexOf(" (");
+                String function = paren >= 0 ? section.substring(0, paren) : section;
+                boolean leaf = i == frames.length - 1;
+                addTime(functions, function, count, leaf, seenFunctions.add(function));
+                addTime(sections, section, count, leaf, seenSections.add(section));
+            }
+        }
+        out.printf("Tiny profile, %d ms interval%n", interval);
+        printTable(out, "Function", functions);
+        printTable(out, "Section", sections);
+    }
+
+    private static void addTime(Map<String, long[]> times, String key, long count, boolean self, boolean firstInStack) {
+        long[] time = times.computeIfAbsent(key, (k) -> new long[2]);
+        if (self) {
+            time[0] += count;
+        }
+        if (firstInStack) {
+            time[1] += count;
+        }
+    }
+
+    private void printTable(PrintStream out, String title, Map<String, long[]> times) {
+        out.printf("%10s %10s  %s%n", "self ms", "total ms", title);
+        times.entrySet().stream() //
+                        .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1])) //
+                        .forEach((e) -> out.printf("%10d %10d  %s%n", e.getValue()[0] * interval, e.getValue()[1] * interval, e.getKey()));
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.graalvm.tinylang;
+
+import java.lang.invoke.MethodHandles;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnknownIdentifierException;
+import com.oracle.truffle.api.library.CachedLibrary;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.DynamicObjectLibrary;
+import com.oracle.truffle.api.object.Shape;
+
+/**
+ * Record created with <code>(record)</code>. Fields are added by
+ * <code>(set-field name record value)</code> and read with
+ * <code>(field name record)</code>. Records that got the same fields in the
+ * same order share a {@link Shape}, so field accesses are cached per shape and
+ * compile to reads at a constant offset. The first fields are stored in the
+ * object itself.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class TinyRecord extends DynamicObject implements TruffleObject {
+
+    @DynamicField private Object o0;
+    @DynamicField private Object o1;
+    @DynamicField private Object o2;
+    @DynamicField private long p0;
+    @DynamicField private long p1;
+    @DynamicField private long p2;
+
+    TinyRecord(Shape shape) {
+        super(shape);
+    }
+
+    /**
+     * Creates the shape of an empty record. Created once per language instance.
+     */
+    static Shape createRootShape() {
+        return Shape.newBuilder().layout(TinyRecord.class, MethodHandles.lookup()).build();
+    }
+
+    @ExportMessage
+    boolean hasMembers() {
+        return true;
+    }
+
+    @ExportMessage
+    Object getMembers(@SuppressWarnings("unused") boolean includeInternal, @CachedLibrary("this") DynamicObjectLibrary objects) {
+        return new TinyArray(objects.getKeyArray(this));
+    }
+
+    @ExportMessage
+    boolean isMemberReadable(String member, @CachedLibrary("this") DynamicObjectLibrary objects) {
+        return objects.containsKey(this, member);
+    }
+
+    @ExportMessage
+    Object readMember(String member, @CachedLibrary("this") DynamicObjectLibrary objects) throws UnknownIdentifierException {
+        Object value = objects.getOrDefault(this, member, null);
+        if (value == null) {
+            throw UnknownIdentifierException.create(member);
+        }
+        return value;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    Object toDisplayString(@SuppressWarnings("unused") boolean allowSideEffects) {
+        DynamicObjectLibrary objects = DynamicObjectLibrary.getUncached();
+        StringBuilder b = new StringBuilder("{");
+        Object[] keys = objects.getKeyArray(this);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(keys[i]).append(": ").append(objects.getOrDefault(this, keys[i], null));
+        }
+        return b.append('}').toString();
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.graalvm.tinylang;
+
+import org.graalvm.tinylang.TinyLanguage.TinyRootNode;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.bytecode.ContinuationResult;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnknownIdentifierException;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * A program that was suspended because its time slice expired, see
+ * <code>--tiny.TimeSlice</code>. Invoking the <code>resume</code> member runs
+ * the program for another time slice and returns either the next suspension or
+ * the result of the program. A suspension can be resumed once.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class TinySuspension implements TruffleObject {
+
+    static final String RESUME = "resume";
+
+    private ContinuationResult continuation;
+
+    private TinySuspension(ContinuationResult continuation) {
+        this.continuation = continuation;
+    }
+
+    static Object wrap(Object result) {
+        if (result instanceof ContinuationResult continuation) {
+            return new TinySuspension(continuation);
+        }
+        return result;
+    }
+
+    @TruffleBoundary
+    Object resume() {
+        ContinuationResult c = continuation;
+        if (c == null) {
+            throw TinyException.create("Program was already resumed.", null);
+        }
+        continuation = null;
+        return wrap(c.continueWith(null));
+    }
+
+    @ExportMessage
+    boolean hasMembers() {
+        return true;
+    }
+
+    @ExportMessage
+    Object getMembers(@SuppressWarnings("unused") boolean includeInternal) {
+        return new Members();
+    }
+
+    @ExportMessage
+    boolean isMemberInvocable(String member) {
+        return RESUME.equals(member);
+    }
+
+    @ExportMessage
+    Object invokeMember(String member, @SuppressWarnings("unused") Object[] arguments) throws UnknownIdentifierException {
+        if (!RESUME.equals(member)) {
+            throw UnknownIdentifierException.create(member);
+        }
+        return resume();
+    }
+
+    @ExportMessage
+    Object toDisplayString(@SuppressWarnings("unused") boolean allowSideEffects) {
+        return "suspended";
+    }
+
+    @ExportLibrary(InteropLibrary.class)
+    static final class Members implements TruffleObject {
+
+        @ExportMessage
+        boolean hasArrayElements() {
+            return true;
+        }
+
+        @ExportMessage
+        long getArraySize() {
+            return 1;
+        }
+
+        @ExportMessage
+        boolean isArrayElementReadable(long index) {
+            return index == 0;
+        }
+
+        @ExportMessage
+        Object readArrayElement(long index) throws InvalidArrayIndexException {
+            if (index != 0) {
+                throw InvalidArrayIndexException.create(index);
+            }
+            return RESUME;
+        }
+    }
+
+    /**
+     * Entry point of a program if time slicing is enabled. Turns the continuation
+     * of a yielding program into a suspension.
+     */
+    static final class ProgramRootNode extends RootNode {
+
+        @Child private DirectCallNode program;
+
+        ProgramRootNode(TinyLanguage language, TinyRootNode program) {
+            super(language);
+            this.program = DirectCallNode.create(program.getCallTarget());
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return wrap(program.call(frame.getArguments()));
+        }
+
+        @Override
+        public String getName() {
+            return "program";
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.graalvm.tinylang;
+
+import java.math.BigInteger;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.ImplicitCast;
+import com.oracle.truffle.api.dsl.TypeSystem;
+
+/**
+ * Numeric tower of tiny. Integers widen to long and then to big integers,
+ * mixing with doubles widens to double.
+ */
+@TypeSystem
+public abstract class TinyTypes {
+
+    @ImplicitCast
+    static long castLong(int value) {
+        return value;
+    }
+
+    @ImplicitCast
+    static double castDouble(int value) {
+        return value;
+    }
+
+    @ImplicitCast
+    static double castDouble(long value) {
+        return value;
+    }
+
+    @ImplicitCast
+    @TruffleBoundary
+    static TinyBigInteger castBigInteger(int value) {
+        return new TinyBigInteger(BigInteger.valueOf(value));
+    }
+
+    @ImplicitCast
+    @TruffleBoundary
+    static TinyBigInteger castBigInteger(long value) {
+        return new TinyBigInteger(BigInteger.valueOf(value));
+    }
+
+}